@@ -0,0 +1,92 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Benchmarks the directory walk that backs {@link Scanner#scan} over a
+ * generated directory tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DirectoryWalkerBenchmark {
+
+    /**
+     * The depth of the generated tree. Gradle builds are placed at the leaves.
+     */
+    @Param({ "3", "5" })
+    private int depth;
+
+    /**
+     * The number of subdirectories of each non-leaf directory.
+     */
+    @Param({ "6" })
+    private int fanOut;
+
+    /**
+     * The number of walker threads.
+     */
+    @Param({ "1", "4" })
+    private int parallelism;
+
+    private Path root;
+
+    /**
+     * Generate the directory tree.
+     *
+     * @throws IOException
+     *             If the tree cannot be created.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("scanner-benchmark");
+        generate(root, depth);
+    }
+
+    /**
+     * Delete the directory tree.
+     */
+    @TearDown
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(root.toFile());
+    }
+
+    /**
+     * Walk the whole tree.
+     *
+     * @return The found build directories.
+     */
+    @Benchmark
+    public List<File> walk() {
+        return new DirectoryWalker(parallelism, dir -> {
+            // Ignore progress
+        }).findBuildDirs(root.toFile());
+    }
+
+    private void generate(Path dir, int remainingDepth) throws IOException {
+        if (remainingDepth == 0) {
+            Files.createFile(dir.resolve("build.gradle"));
+            return;
+        }
+        for (int i = 0; i < fanOut; i++) {
+            Path subDir = Files.createDirectory(dir.resolve("dir" + i));
+            generate(subDir, remainingDepth - 1);
+        }
+    }
+}
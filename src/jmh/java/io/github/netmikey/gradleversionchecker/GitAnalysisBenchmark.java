@@ -0,0 +1,134 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.ReflectionUtils;
+
+import io.github.netmikey.gradleversionchecker.ProjectMetadata.Facet;
+
+/**
+ * Benchmarks the Git status and tracking analysis of {@link ProjectAnalyzer}
+ * on a synthetic repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GitAnalysisBenchmark {
+
+    /**
+     * The number of files in the working tree.
+     */
+    @Param({ "100", "10000" })
+    private int files;
+
+    /**
+     * The strategy for checking whether the working directory is clean.
+     */
+    @Param({ "FULL", "WRAPPER_ONLY", "INDEX_STAT" })
+    private GitStatusChecker.Strategy strategy;
+
+    private Path root;
+
+    private GitRepositories gitRepositories;
+
+    private ProjectAnalyzer analyzer;
+
+    /**
+     * Create a repository with a committed working tree of the configured
+     * size and a branch tracking a remote branch.
+     *
+     * @throws IOException
+     *             If the repository cannot be created.
+     * @throws GitAPIException
+     *             If the repository cannot be created.
+     */
+    @Setup
+    public void setUp() throws IOException, GitAPIException {
+        root = Files.createTempDirectory("git-benchmark");
+        try (Git git = Git.init().setDirectory(root.toFile()).call()) {
+            for (int i = 0; i < files; i++) {
+                Path file = root.resolve("src/dir" + (i % 100) + "/File" + i + ".java");
+                Files.createDirectories(file.getParent());
+                Files.write(file, ("class File" + i + " {}\n").getBytes(StandardCharsets.UTF_8));
+            }
+            git.add().addFilepattern(".").call();
+            RevCommit commit = git.commit().setMessage("Initial commit").call();
+
+            Repository repository = git.getRepository();
+            RefUpdate remoteBranch = repository.updateRef("refs/remotes/origin/master");
+            remoteBranch.setNewObjectId(commit);
+            remoteBranch.update();
+            StoredConfig config = repository.getConfig();
+            config.setString("remote", "origin", "url", root.resolve("nonexistent").toUri().toString());
+            config.setString("remote", "origin", "fetch", "+refs/heads/*:refs/remotes/origin/*");
+            config.setString("branch", "master", "remote", "origin");
+            config.setString("branch", "master", "merge", "refs/heads/master");
+            config.save();
+        }
+
+        // Wire the analyzer as Spring would, without fetching
+        GitStatusChecker gitStatusChecker = new GitStatusChecker();
+        setField(gitStatusChecker, "strategy", strategy);
+        gitRepositories = new GitRepositories();
+        setField(gitRepositories, "cacheSize", 1);
+        RunProfile profile = new RunProfile();
+        setField(profile, "output", "");
+        analyzer = new ProjectAnalyzer();
+        setField(analyzer, "gitStatusChecker", gitStatusChecker);
+        setField(analyzer, "gitRepositories", gitRepositories);
+        setField(analyzer, "profile", profile);
+    }
+
+    /**
+     * Close and delete the repository.
+     */
+    @TearDown
+    public void tearDown() {
+        gitRepositories.closeAll();
+        FileSystemUtils.deleteRecursively(root.toFile());
+    }
+
+    /**
+     * Analyze the repository.
+     *
+     * @return The analyzed metadata.
+     * @throws IOException
+     *             If the repository cannot be read.
+     */
+    @Benchmark
+    public ProjectMetadata analyzeGit() throws IOException {
+        ProjectMetadata project = new ProjectMetadata();
+        project.setProjectDir(new File(root.toFile(), "src"));
+        analyzer.analyzeGit(project, EnumSet.of(Facet.GIT, Facet.GIT_STATUS, Facet.GIT_TRACKING));
+        return project;
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks parsing, comparing and sorting {@link GradleVersion}s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GradleVersionBenchmark {
+
+    private List<String> releaseList;
+
+    private List<GradleVersion> parsedReleaseList;
+
+    private GradleVersion lhs;
+
+    private GradleVersion rhs;
+
+    /**
+     * Generate a shuffled release list roughly as long as Gradle's real one.
+     */
+    @Setup
+    public void setUp() {
+        releaseList = new ArrayList<>();
+        for (int major = 0; major <= 5; major++) {
+            for (int minor = 0; minor <= 12; minor++) {
+                releaseList.add(major + "." + minor + "-milestone-1");
+                releaseList.add(major + "." + minor + "-rc-1");
+                releaseList.add(major + "." + minor + "-rc-2");
+                releaseList.add(major + "." + minor);
+                releaseList.add(major + "." + minor + ".1");
+            }
+        }
+        Collections.shuffle(releaseList, new Random(42));
+
+        parsedReleaseList = new ArrayList<>();
+        for (String version : releaseList) {
+            parsedReleaseList.add(GradleVersion.of(version));
+        }
+        lhs = GradleVersion.of("4.10.2");
+        rhs = GradleVersion.of("4.10-rc-1");
+    }
+
+    /**
+     * Compare two pre-parsed versions.
+     *
+     * @return The comparison result.
+     */
+    @Benchmark
+    public int compare() {
+        return lhs.compareTo(rhs);
+    }
+
+    /**
+     * Look up two versions by their string representation, then compare them.
+     *
+     * @return The comparison result.
+     */
+    @Benchmark
+    public int lookUpAndCompare() {
+        return GradleVersion.of("4.10.2").compareTo(GradleVersion.of("4.10-rc-1"));
+    }
+
+    /**
+     * Sort the full, pre-parsed release list.
+     *
+     * @return The sorted list.
+     */
+    @Benchmark
+    public List<GradleVersion> sortReleaseList() {
+        List<GradleVersion> sorted = new ArrayList<>(parsedReleaseList);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Parse and sort the full release list, as {@link GradleInfo} does.
+     *
+     * @return The sorted list.
+     */
+    @Benchmark
+    public List<GradleVersion> lookUpAndSortReleaseList() {
+        List<GradleVersion> sorted = new ArrayList<>(releaseList.size());
+        for (String version : releaseList) {
+            sorted.add(GradleVersion.of(version));
+        }
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,272 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.FS;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.github.netmikey.gradleversionchecker.RunProfile.Phase;
+
+/**
+ * Finds bare Git repositories and analyzes the Gradle projects committed at a
+ * configurable ref straight from the Git object database, without ever
+ * checking out a working tree.
+ * <p>
+ * A project is a directory of the tree containing a <code>build.gradle</code>
+ * file and a <code>gradlew</code> script, its Gradle version is read from the
+ * committed <code>gradle-wrapper.properties</code>. As with working trees,
+ * the directories below a project aren't searched any further. Since Gradle
+ * cannot be asked without a working tree, projects whose Gradle version
+ * cannot be read statically are skipped.
+ */
+@Component
+public class BareRepositoryScanner {
+
+    private static final String BUILD_FILE = "build.gradle";
+
+    private static final String GRADLEW = "gradlew";
+
+    @Autowired
+    private ConsoleWriter out;
+
+    @Autowired
+    private ProjectAnalyzer analyzer;
+
+    @Autowired
+    private GitRepositories gitRepositories;
+
+    @Autowired
+    private RunProfile profile;
+
+    @Value("${scan-parallelism:0}")
+    private int scanParallelism;
+
+    @Value("${default-excludes:true}")
+    private boolean defaultExcludes;
+
+    @Value("${exclude:}")
+    private String[] excludes;
+
+    @Value("${max-depth:-1}")
+    private int maxDepth;
+
+    @Value("${bare-ref:HEAD}")
+    private String ref;
+
+    /**
+     * Scan for bare repositories from the specified baseDir.
+     *
+     * @param baseDir
+     *            The directory to start with.
+     * @param callback
+     *            A callback that will get called for any project found in a
+     *            bare repository.
+     */
+    public void scan(File baseDir, Consumer<ProjectMetadata> callback) {
+        out.println("Scanning for bare Git repositories in " + baseDir.getAbsolutePath() + " ...\n");
+
+        int parallelism = scanParallelism > 0 ? scanParallelism : Runtime.getRuntime().availableProcessors();
+        // The rules apply to the directories of the file system, and to those
+        // in the repositories below the repository's directory
+        PruneRules pruneRules = new PruneRules(defaultExcludes, Arrays.asList(excludes), maxDepth, false);
+        DirectoryWalker walker = new DirectoryWalker(parallelism, pruneRules,
+            dir -> RepositoryCache.FileKey.isGitRepository(dir.toFile(), FS.DETECTED), dir -> {
+                out.countDirectoryScanned();
+                out.printVolatile(">> Scanning: " + dir.toAbsolutePath());
+            });
+
+        List<File> gitDirs = profile.time(Phase.SCAN, baseDir, () -> walker.find(baseDir));
+
+        for (File gitDir : gitDirs) {
+            out.printVolatile(">> Analyzing: " + gitDir.getAbsolutePath());
+            try {
+                List<ProjectMetadata> projects = profile.time(Phase.STATIC_ANALYSIS, gitDir,
+                    () -> analyze(gitDir, pruneRules));
+                for (ProjectMetadata project : projects) {
+                    out.countProjectFound();
+                    profile.count("projects.found");
+                    callback.accept(project);
+                }
+            } catch (IOException e) {
+                out.println("Unable to read " + gitDir.getAbsolutePath() + ": " + e.getMessage() + "\n");
+            }
+        }
+    }
+
+    private List<ProjectMetadata> analyze(File gitDir, PruneRules pruneRules) throws IOException {
+        List<ProjectMetadata> projects = new ArrayList<>();
+        try (Repository repository = gitRepositories.openGitDir(gitDir);
+            ObjectReader reader = repository.newObjectReader()) {
+
+            ObjectId tree = repository.resolve(ref + "^{tree}");
+            if (tree == null) {
+                // Empty repository or no such ref
+                return projects;
+            }
+            String branch = branch(repository);
+            for (TreeProject found : findProjects(reader, tree, pruneRules)) {
+                String location = gitDir.getAbsolutePath() + (found.path.isEmpty() ? "" : "/" + found.path);
+                if (found.gradleVersion == null) {
+                    out.println("Skipping " + location + ": unknown Gradle version\n");
+                    continue;
+                }
+                GradleVersion gradleVersion;
+                try {
+                    gradleVersion = GradleVersion.of(found.gradleVersion);
+                } catch (IllegalArgumentException e) {
+                    out.println("Skipping " + location + ": " + e.getMessage() + "\n");
+                    continue;
+                }
+
+                ProjectMetadata project = new ProjectMetadata();
+                project.setProjectDir(found.path.isEmpty() ? gitDir.getCanonicalFile()
+                    : new File(gitDir.getCanonicalFile(), found.path));
+                analyzer.applyGradleVersion(project, gradleVersion);
+                project.setUnderGitVersionControl(true);
+                project.setGitDir(gitDir.getCanonicalFile());
+                project.setBranch(branch);
+                projects.add(project);
+            }
+        }
+        return projects;
+    }
+
+    private String branch(Repository repository) throws IOException {
+        if (Constants.HEAD.equals(ref)) {
+            return repository.getBranch();
+        }
+        Ref resolvedRef = repository.findRef(ref);
+        return resolvedRef == null ? ref : Repository.shortenRefName(resolvedRef.getName());
+    }
+
+    /**
+     * Find the Gradle projects in the specified tree. Package-private for
+     * testing.
+     *
+     * @param reader
+     *            The reader of the repository's objects.
+     * @param tree
+     *            The root tree.
+     * @param pruneRules
+     *            The rules deciding which subtrees not to search.
+     * @return The projects, sorted by path.
+     * @throws IOException
+     *             If the objects cannot be read.
+     */
+    static List<TreeProject> findProjects(ObjectReader reader, ObjectId tree, PruneRules pruneRules)
+        throws IOException {
+
+        List<TreeProject> projects = new ArrayList<>();
+        findProjects(reader, tree, "", 0, pruneRules, projects);
+        return projects;
+    }
+
+    private static void findProjects(ObjectReader reader, ObjectId tree, String path, int depth,
+        PruneRules pruneRules, List<TreeProject> projects) throws IOException {
+
+        Map<String, ObjectId> subTrees = new TreeMap<>();
+        boolean hasBuildFile = false;
+        boolean hasGradlew = false;
+        try (TreeWalk walk = new TreeWalk(reader)) {
+            walk.addTree(tree);
+            while (walk.next()) {
+                FileMode mode = walk.getFileMode(0);
+                if (FileMode.TREE.equals(mode)) {
+                    subTrees.put(walk.getNameString(), walk.getObjectId(0));
+                } else if (mode.getObjectType() == Constants.OBJ_BLOB) {
+                    hasBuildFile |= BUILD_FILE.equals(walk.getNameString());
+                    hasGradlew |= GRADLEW.equals(walk.getNameString());
+                }
+            }
+        }
+
+        if (hasBuildFile) {
+            // A build -> no recursion
+            if (hasGradlew) {
+                projects.add(new TreeProject(path, wrapperGradleVersion(reader, tree)));
+            }
+            return;
+        }
+        for (Map.Entry<String, ObjectId> subTree : subTrees.entrySet()) {
+            String subPath = path.isEmpty() ? subTree.getKey() : path + "/" + subTree.getKey();
+            if (pruneRules.check(Paths.get(subPath), depth + 1,
+                () -> containsBuildFile(reader, subTree.getValue())) == null) {
+
+                findProjects(reader, subTree.getValue(), subPath, depth + 1, pruneRules, projects);
+            }
+        }
+    }
+
+    private static boolean containsBuildFile(ObjectReader reader, ObjectId tree) {
+        try (TreeWalk walk = TreeWalk.forPath(reader, BUILD_FILE, tree)) {
+            return walk != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String wrapperGradleVersion(ObjectReader reader, ObjectId tree) throws IOException {
+        try (TreeWalk walk = TreeWalk.forPath(reader, GradleWrapperProperties.PATH, tree)) {
+            if (walk == null) {
+                return null;
+            }
+            try (InputStream in = reader.open(walk.getObjectId(0), Constants.OBJ_BLOB).openStream()) {
+                return GradleWrapperProperties.read(in).getGradleVersion().orElse(null);
+            }
+        }
+    }
+
+    /**
+     * A Gradle project found in a tree.
+     */
+    static class TreeProject {
+
+        private final String path;
+
+        private final String gradleVersion;
+
+        TreeProject(String path, String gradleVersion) {
+            this.path = path;
+            this.gradleVersion = gradleVersion;
+        }
+
+        /**
+         * Get the path.
+         *
+         * @return Returns the project's path relative to the root tree, empty
+         *         for the root itself.
+         */
+        String getPath() {
+            return path;
+        }
+
+        /**
+         * Get the gradleVersion.
+         *
+         * @return Returns the Gradle version of the wrapper, or
+         *         <code>null</code> if it cannot be read.
+         */
+        String getGradleVersion() {
+            return gradleVersion;
+        }
+    }
+}
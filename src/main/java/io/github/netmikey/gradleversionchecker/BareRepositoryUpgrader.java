@@ -0,0 +1,545 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.fusesource.jansi.Ansi.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefLeaseSpec;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.github.netmikey.gradleversionchecker.RunProfile.Phase;
+
+/**
+ * Upgrades the projects found in bare repositories by committing the new
+ * wrapper files straight into the Git object database.
+ * <p>
+ * No working tree is checked out and no build is run: builds are left to CI.
+ * All projects of a repository are upgraded in a single commit on top of
+ * <code>bare-ref</code>, whose tree is the original one with the wrapper
+ * properties rewritten and the wrapper jar and scripts replaced by those of
+ * the target version. The branch is only updated if it still points where it
+ * did when the commit was built. Once all repositories are committed, the
+ * updated branches are pushed, each repository in one atomic push, and only
+ * then are its projects counted as upgraded.
+ */
+@Component
+public class BareRepositoryUpgrader implements Consumer<ProjectMetadata> {
+
+    @Autowired
+    private ConsoleWriter out;
+
+    @Autowired
+    private GradleInfo gradleInfo;
+
+    @Autowired
+    private WrapperUpgrader wrapperUpgrader;
+
+    @Autowired
+    private ProjectAnalyzer analyzer;
+
+    @Autowired
+    private GitRepositories gitRepositories;
+
+    @Autowired
+    private RunProfile profile;
+
+    @Value("${major-upgrades:false}")
+    private boolean majorUpgrades;
+
+    @Value("${dry-run:false}")
+    private boolean dryRun;
+
+    @Value("${commit:true}")
+    private boolean commit;
+
+    @Value("${push:${commit:true}}")
+    private boolean push;
+
+    @Value("${parallelism:1}")
+    private int parallelism;
+
+    @Value("${bare-ref:HEAD}")
+    private String ref;
+
+    @Value("${bare-branch:}")
+    private String branch;
+
+    @Value("${bare-remote:origin}")
+    private String remote;
+
+    private final Map<File, List<ProjectMetadata>> repositories = new LinkedHashMap<>();
+
+    /**
+     * The branches to be pushed, by Git directory.
+     */
+    private final Map<File, RefLeaseSpec> pushes = new LinkedHashMap<>();
+
+    /**
+     * The projects committed but not pushed yet, by Git directory.
+     */
+    private final Map<File, List<ProjectMetadata>> pushedProjects = new HashMap<>();
+
+    /**
+     * The projects whose upgrade has been committed, pushed or not.
+     */
+    private final Set<String> committed = ConcurrentHashMap.newKeySet();
+
+    private final List<String> succeeded = new CopyOnWriteArrayList<>();
+
+    private final List<String> skipped = new CopyOnWriteArrayList<>();
+
+    private final List<String> failed = new CopyOnWriteArrayList<>();
+
+    private Map<String, byte[]> templateFiles;
+
+    /**
+     * Collect a project to be upgraded by {@link #finish()}, together with the
+     * other projects of its repository.
+     */
+    @Override
+    public synchronized void accept(ProjectMetadata project) {
+        repositories.computeIfAbsent(project.getGitDir(), gitDir -> new ArrayList<>()).add(project);
+    }
+
+    /**
+     * Upgrade the collected projects, push the updated branches and print a
+     * summary.
+     */
+    public void finish() {
+        runAll(repositories.entrySet(), repository -> upgradeRepository(repository.getKey(), repository.getValue()));
+        if (!pushes.isEmpty()) {
+            runAll(pushes.entrySet(),
+                lease -> push(lease.getKey(), lease.getValue(), pushedProjects.get(lease.getKey())));
+        }
+
+        out.println(succeeded.size() + " project(s) upgraded, " + skipped.size() + " skipped, " + failed.size()
+            + " failed");
+        for (String failure : failed) {
+            out.println(ansi().fgBrightRed().a("    - " + failure).reset());
+        }
+    }
+
+    /**
+     * Get the specified project as this run left it at <code>bare-ref</code>,
+     * once it has been finished: upgraded if the upgrade has been committed
+     * on top of the ref's branch, as found otherwise.
+     * 
+     * @param project
+     *            The project as found by the scan.
+     * @return The project's current state.
+     */
+    public ProjectMetadata currentState(ProjectMetadata project) {
+        if (committed.contains(project.getProjectDir().getPath())
+            && (branch.isEmpty() || branch.equals(project.getBranch()))) {
+
+            ProjectMetadata upgraded = project.copy();
+            analyzer.applyGradleVersion(upgraded, gradleInfo.latestGradleVersion());
+            return upgraded;
+        }
+        return project;
+    }
+
+    private <T> void runAll(Collection<T> items, Consumer<T> task) {
+        if (parallelism <= 1) {
+            items.forEach(task);
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            for (T item : items) {
+                executor.execute(() -> {
+                    out.startBuffering();
+                    try {
+                        task.accept(item);
+                    } finally {
+                        out.flushBuffer();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Keep waiting
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    private void upgradeRepository(File gitDir, List<ProjectMetadata> projects) {
+        out.println(">> Repository: " + gitDir.getPath());
+        List<ProjectMetadata> upgradable = new ArrayList<>();
+        for (ProjectMetadata project : projects) {
+            out.println(">> Project: " + project.getProjectDir().getPath());
+            out.println(ansi().a("    Gradle: ").bold().format("%-10s ", project.getGradleVersion()).boldOff()
+                .a(out.formatVersionUpToDate(project)));
+            out.println(ansi().a("    Branch: ").format("%-10s ", project.getBranch()));
+            if (evaluateUpgradability(project)) {
+                out.println(ansi().fgBrightGreen().a("   Upgrading project to Gradle "
+                    + gradleInfo.latestGradleVersion()).reset());
+                upgradable.add(project);
+            } else {
+                skip(project);
+            }
+        }
+        if (upgradable.isEmpty() || dryRun) {
+            upgradable.forEach(this::skip);
+            out.println("");
+            return;
+        }
+        if (!commit) {
+            out.println("   Committing disabled");
+            upgradable.forEach(this::skip);
+            out.println("");
+            return;
+        }
+
+        out.countUpgradeStarted();
+        try (Repository repository = gitRepositories.openGitDir(gitDir)) {
+            RefLeaseSpec lease = commitUpgrade(repository, gitDir, upgradable, gradleInfo.latestGradleVersion());
+            if (lease != null) {
+                upgradable.forEach(project -> committed.add(project.getProjectDir().getPath()));
+            }
+            if (lease == null) {
+                upgradable.forEach(this::skip);
+            } else if (push) {
+                // Upgraded once pushed
+                synchronized (pushes) {
+                    pushes.put(gitDir, lease);
+                    pushedProjects.put(gitDir, upgradable);
+                }
+            } else {
+                upgradable.forEach(this::succeed);
+            }
+        } catch (IOException | RuntimeException e) {
+            out.println(ansi().fgBrightRed().a("     " + e.getMessage()).reset());
+            upgradable.forEach(project -> fail(project, e.getMessage()));
+        } finally {
+            out.countUpgradeFinished();
+            out.println("");
+        }
+    }
+
+    /**
+     * Get the projects that failed so far, with the reason. Package-private
+     * for testing.
+     */
+    List<String> getFailed() {
+        return failed;
+    }
+
+    private void succeed(ProjectMetadata project) {
+        profile.count("upgrades.succeeded");
+        succeeded.add(project.getProjectDir().getPath());
+    }
+
+    private void skip(ProjectMetadata project) {
+        profile.count("upgrades.skipped");
+        skipped.add(project.getProjectDir().getPath());
+    }
+
+    private void fail(ProjectMetadata project, String failure) {
+        profile.count("upgrades.failed");
+        failed.add(project.getProjectDir().getPath() + ": " + failure);
+    }
+
+    private boolean evaluateUpgradability(ProjectMetadata project) {
+        if (project.isGradleVersionUpToDate()) {
+            return false;
+        }
+        if (!majorUpgrades && !project.isGradleVersionSameMajorAsCurrent()) {
+            out.println(
+                ansi().fgBrightRed().a("   Not upgrading to Gradle " + gradleInfo.latestGradleVersion() + ":").reset());
+            out.println("    - not the same major version and major upgrades disabled");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Commit the upgrade of the specified projects and update the branch.
+     * Package-private for testing.
+     *
+     * @return The branch to push, with the id it is expected to have on
+     *         <code>bare-remote</code> if it's a separate branch that is
+     *         forced, or <code>null</code> if the branch already contains the
+     *         upgrade.
+     */
+    RefLeaseSpec commitUpgrade(Repository repository, File gitDir, List<ProjectMetadata> projects,
+        GradleVersion gradleVersion) throws IOException {
+
+        try (RevWalk revWalk = new RevWalk(repository);
+            ObjectInserter inserter = repository.newObjectInserter()) {
+
+            // Resolve the ref first: it's where the branch is expected to be
+            Ref sourceRef = repository.findRef(ref);
+            ObjectId sourceId = sourceRef != null ? sourceRef.getLeaf().getObjectId() : repository.resolve(ref);
+            if (sourceId == null) {
+                throw new UpgradeException(ref + " not found");
+            }
+            RevCommit source = revWalk.parseCommit(sourceId);
+            String sourceBranch = sourceRef == null ? null : sourceRef.getLeaf().getName();
+            String targetBranch = branch.isEmpty() ? sourceBranch : Constants.R_HEADS + branch;
+            if (targetBranch == null || !targetBranch.startsWith(Constants.R_HEADS)) {
+                throw new UpgradeException(ref + " is not a branch, use bare-branch to name the branch to commit to");
+            }
+            boolean onSourceBranch = targetBranch.equals(sourceBranch);
+            Ref target = onSourceBranch ? sourceRef.getLeaf() : repository.exactRef(targetBranch);
+            ObjectId expectedId = target == null ? ObjectId.zeroId() : target.getObjectId();
+            // Taken before the branch is rebuilt, which might be what tracks the remote one
+            ObjectId remoteId = onSourceBranch ? null : remoteBranchId(repository, targetBranch, expectedId);
+
+            ObjectId tree = profile.time(Phase.WRAPPER_UPGRADE, gitDir, () -> {
+                out.printVolatile(">> Upgrading the Gradle wrappers...");
+                return upgradeTree(revWalk, inserter, source.getTree(), gitDir, projects, gradleVersion);
+            });
+            String shortBranch = Repository.shortenRefName(targetBranch);
+            if (!onSourceBranch && target != null && revWalk.parseCommit(expectedId).getTree().equals(tree)) {
+                out.println("    Branch " + shortBranch + " already contains the upgrade, nothing to commit");
+                return null;
+            }
+
+            profile.time(Phase.COMMIT, gitDir, () -> {
+                out.printVolatile(">> Committing...");
+                String message = message(projects, gradleVersion);
+                PersonIdent ident = new PersonIdent(repository);
+                CommitBuilder upgradeCommit = new CommitBuilder();
+                upgradeCommit.setTreeId(tree);
+                upgradeCommit.setParentId(source);
+                upgradeCommit.setAuthor(ident);
+                upgradeCommit.setCommitter(ident);
+                upgradeCommit.setMessage(message);
+                ObjectId commitId = inserter.insert(upgradeCommit);
+                inserter.flush();
+
+                RefUpdate update = repository.updateRef(targetBranch);
+                update.setNewObjectId(commitId);
+                update.setExpectedOldObjectId(expectedId);
+                // A separate branch is rebuilt from the ref on every upgrade
+                update.setForceUpdate(!onSourceBranch);
+                update.setRefLogMessage("commit: " + message.split("\n", 2)[0], false);
+                RefUpdate.Result result = update.update(revWalk);
+                switch (result) {
+                    case NEW:
+                    case FAST_FORWARD:
+                    case FORCED:
+                        break;
+                    case LOCK_FAILURE:
+                        throw new UpgradeException("Branch " + shortBranch + " changed during the upgrade");
+                    default:
+                        throw new UpgradeException("Unable to update branch " + shortBranch + ": " + result);
+                }
+                out.println("    Commit " + commitId.abbreviate(7).name() + " on " + shortBranch + " successful");
+            });
+            return new RefLeaseSpec(targetBranch, remoteId == null ? null : remoteId.name());
+        }
+    }
+
+    /**
+     * Get the id the specified branch was last seen with on
+     * <code>bare-remote</code>: its remote tracking branch, or the branch
+     * itself if it's fetched straight into, as bare clones do, or it isn't
+     * fetched at all. {@link ObjectId#zeroId()} if it wasn't seen.
+     */
+    private ObjectId remoteBranchId(Repository repository, String branch, ObjectId branchId) throws IOException {
+        RemoteConfig remoteConfig;
+        try {
+            remoteConfig = new RemoteConfig(repository.getConfig(), remote);
+        } catch (URISyntaxException e) {
+            throw new UpgradeException("Invalid remote " + remote + ": " + e.getMessage(), e);
+        }
+        for (RefSpec fetchSpec : remoteConfig.getFetchRefSpecs()) {
+            if (fetchSpec.matchSource(branch)) {
+                String trackingBranch = fetchSpec.expandFromSource(branch).getDestination();
+                if (trackingBranch != null && !trackingBranch.equals(branch)) {
+                    Ref tracking = repository.exactRef(trackingBranch);
+                    return tracking == null ? ObjectId.zeroId() : tracking.getObjectId();
+                }
+            }
+        }
+        return branchId;
+    }
+
+    /**
+     * Build the tree with the wrappers of the specified projects upgraded.
+     * Package-private for testing.
+     *
+     * @return The id of the inserted tree.
+     */
+    ObjectId upgradeTree(RevWalk revWalk, ObjectInserter inserter, ObjectId tree, File gitDir,
+        List<ProjectMetadata> projects, GradleVersion gradleVersion) throws IOException {
+
+        Map<String, byte[]> template = templateFiles(gradleVersion);
+        DirCache index = DirCache.read(revWalk.getObjectReader(), tree);
+        DirCacheEditor editor = index.editor();
+        for (ProjectMetadata project : projects) {
+            String prefix = prefix(gitDir, project);
+            DirCacheEntry properties = index.getEntry(prefix + GradleWrapperProperties.PATH);
+            if (properties == null) {
+                throw new UpgradeException(prefix + GradleWrapperProperties.PATH + " not found");
+            }
+            String content = new String(revWalk.getObjectReader().open(properties.getObjectId(), Constants.OBJ_BLOB)
+                .getBytes(), StandardCharsets.ISO_8859_1);
+            put(editor, prefix + GradleWrapperProperties.PATH, FileMode.REGULAR_FILE, inserter.insert(
+                Constants.OBJ_BLOB, wrapperUpgrader.rewriteProperties(content, gradleVersion)
+                    .getBytes(StandardCharsets.ISO_8859_1)));
+            for (Map.Entry<String, byte[]> templateFile : template.entrySet()) {
+                put(editor, prefix + templateFile.getKey(),
+                    "gradlew".equals(templateFile.getKey()) ? FileMode.EXECUTABLE_FILE : FileMode.REGULAR_FILE,
+                    inserter.insert(Constants.OBJ_BLOB, templateFile.getValue()));
+            }
+        }
+        editor.finish();
+        return index.writeTree(inserter);
+    }
+
+    private static void put(DirCacheEditor editor, String path, FileMode mode, ObjectId blob) {
+        editor.add(new DirCacheEditor.PathEdit(path) {
+            @Override
+            public void apply(DirCacheEntry entry) {
+                entry.setFileMode(mode);
+                entry.setObjectId(blob);
+            }
+        });
+    }
+
+    /**
+     * The wrapper files of the specified version, read once for all
+     * repositories.
+     */
+    private synchronized Map<String, byte[]> templateFiles(GradleVersion gradleVersion) throws IOException {
+        if (templateFiles == null) {
+            File templateDir = wrapperUpgrader.template(gradleVersion);
+            Map<String, byte[]> files = new HashMap<>();
+            for (String templateFile : WrapperUpgrader.TEMPLATE_FILES) {
+                files.put(templateFile, Files.readAllBytes(new File(templateDir, templateFile).toPath()));
+            }
+            templateFiles = files;
+        }
+        return templateFiles;
+    }
+
+    /**
+     * The path of the project within the repository, in the form used by Git
+     * with a trailing slash, or an empty string for the root. Package-private
+     * for testing.
+     */
+    static String prefix(File gitDir, ProjectMetadata project) {
+        String path = gitDir.toPath().relativize(project.getProjectDir().toPath()).toString()
+            .replace(File.separatorChar, '/');
+        return path.isEmpty() ? "" : path + "/";
+    }
+
+    /**
+     * The message of the upgrade commit. Package-private for testing.
+     */
+    static String message(List<ProjectMetadata> projects, GradleVersion gradleVersion) {
+        Set<GradleVersion> fromVersions = new LinkedHashSet<>();
+        projects.forEach(project -> fromVersions.add(project.getGradleVersion()));
+        StringBuilder message = new StringBuilder("build: upgrade Gradle ");
+        if (fromVersions.size() == 1) {
+            message.append("from v").append(fromVersions.iterator().next()).append(' ');
+        }
+        message.append("to v").append(gradleVersion);
+        if (projects.size() > 1) {
+            message.append("\n");
+            for (ProjectMetadata project : projects) {
+                String path = prefix(project.getGitDir(), project);
+                message.append("\n- ").append(path.isEmpty() ? "." : path.substring(0, path.length() - 1))
+                    .append(": v")
+                    .append(project.getGradleVersion());
+            }
+        }
+        return message.append("\n").toString();
+    }
+
+    /**
+     * Push the specified branch to <code>bare-remote</code> and count the
+     * projects as upgraded if it succeeded. A separate branch is forced, but
+     * only as long as it's still where it was expected to be on the remote.
+     * Package-private for testing.
+     */
+    void push(File gitDir, RefLeaseSpec lease, List<ProjectMetadata> projects) {
+        out.println(">> Repository: " + gitDir.getPath());
+        out.printVolatile(">> Pushing...");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (Repository repository = gitRepositories.openGitDir(gitDir);
+            Git gitCall = new Git(repository)) {
+
+            if (!repository.getRemoteNames().contains(remote)) {
+                out.println("    No remote " + remote + " configured, not pushing");
+                projects.forEach(this::succeed);
+                return;
+            }
+            RefSpec refSpec = new RefSpec(lease.getRef() + ":" + lease.getRef())
+                .setForceUpdate(lease.getExpected() != null);
+            List<RefLeaseSpec> leases = lease.getExpected() == null
+                ? Collections.emptyList()
+                : Collections.singletonList(lease);
+            Iterable<PushResult> results = profile.time(Phase.PUSH, gitDir,
+                () -> gitCall.push().setRemote(remote).setRefSpecs(refSpec).setRefLeaseSpecs(leases).setAtomic(true)
+                    .setOutputStream(baos).call());
+            for (PushResult result : results) {
+                for (RemoteRefUpdate update : result.getRemoteUpdates()) {
+                    if (!RemoteRefUpdate.Status.OK.equals(update.getStatus())
+                        && !RemoteRefUpdate.Status.UP_TO_DATE.equals(update.getStatus())) {
+                        throw new UpgradeException(update.getRemoteName() + ": " + update.getStatus()
+                            + (update.getMessage() == null ? "" : " (" + update.getMessage() + ")"));
+                    }
+                }
+            }
+            out.println("    Push successful");
+            projects.forEach(this::succeed);
+        } catch (IOException | RuntimeException | GitAPIException e) {
+            out.println(ansi().fgBrightRed().a("     Push error: " + baos + e.getMessage()).reset());
+            projects.forEach(project -> fail(project, "Push error: " + e.getMessage()));
+        } finally {
+            out.println("");
+        }
+    }
+}
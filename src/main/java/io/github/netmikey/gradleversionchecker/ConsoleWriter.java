@@ -2,13 +2,30 @@ package io.github.netmikey.gradleversionchecker;
 
 import static org.fusesource.jansi.Ansi.*;
 
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
 import org.fusesource.jansi.Ansi;
 import org.fusesource.jansi.Ansi.Erase;
 import org.fusesource.jansi.AnsiConsole;
+import org.fusesource.jansi.AnsiString;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
  * Small wrapper around the Jansi library to handle console output.
+ * <p>
+ * Volatile lines and progress counters are only recorded by the threads
+ * doing the work and rendered by a separate thread at a limited frame rate,
+ * so a slow terminal doesn't slow down the work itself: recording takes no
+ * lock once rendering has started, and writing to the terminal only locks out
+ * other output. If the output is not a terminal, a plain-text summary of the
+ * counters is printed periodically instead.
  */
 @Component
 public class ConsoleWriter {
@@ -18,38 +35,226 @@ public class ConsoleWriter {
      */
     public static final ConsoleWriter INSTANCE = new ConsoleWriter();
 
-    private boolean volatileState = false;
+    private static final int MAX_VOLATILE_LENGTH = 80;
+
+    @Value("${progress-interval:100ms}")
+    private Duration progressInterval = Duration.ofMillis(100);
+
+    @Value("${progress-summary-interval:10s}")
+    private Duration progressSummaryInterval = Duration.ofSeconds(10);
+
+    /**
+     * Guards writing to the stream, along with the state of the volatile line.
+     */
+    private final Object outputLock = new Object();
+
+    private volatile boolean volatileState = false;
 
     private String lastVolatile = "";
 
+    private final ThreadLocal<StringBuilder> buffer = new ThreadLocal<>();
+
+    private volatile PrintStream stream;
+
+    private volatile String currentActivity;
+
+    private final LongAdder directoriesScanned = new LongAdder();
+
+    private final AtomicInteger projectsFound = new AtomicInteger();
+
+    private final AtomicInteger upgradesInProgress = new AtomicInteger();
+
+    private volatile ScheduledExecutorService renderer;
+
+    private volatile boolean interactive;
+
+    private long rateSampleTime;
+
+    private long rateSampleDirectories;
+
+    private long directoriesPerSecond;
+
+    private long lastSummaryTime;
+
+    private String lastSummary = "";
+
     /**
      * Default constructor.
      */
     private ConsoleWriter() {
         AnsiConsole.systemInstall();
+        stream = System.out;
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             if (volatileState) {
-                System.out.print(ansi().eraseLine(Erase.ALL).cursorToColumn(0));
+                stream.print(ansi().eraseLine(Erase.ALL).cursorToColumn(0));
             }
         }));
     }
 
     /**
-     * Print a volatile line.
+     * Print all further output to the standard error stream, leaving the
+     * standard output stream to machine-readable output.
+     */
+    public void useStandardError() {
+        stream = System.err;
+    }
+
+    /**
+     * Print a volatile line. The line is rendered asynchronously, and only
+     * if it is still the latest one when the next frame is due.
      * 
      * @param message
      *            The message to be printed.
      */
     public void printVolatile(String message) {
-        if (message.length() > 80) {
-            message = message.substring(0, 77) + "...";
+        currentActivity = message;
+        startRenderer();
+    }
+
+    /**
+     * Count a directory visited while scanning.
+     */
+    public void countDirectoryScanned() {
+        directoriesScanned.increment();
+        startRenderer();
+    }
+
+    /**
+     * Count a Gradle project found while scanning.
+     */
+    public void countProjectFound() {
+        projectsFound.incrementAndGet();
+        startRenderer();
+    }
+
+    /**
+     * Count an upgrade that has been started. Must be followed by a call to
+     * {@link #countUpgradeFinished()}.
+     */
+    public void countUpgradeStarted() {
+        upgradesInProgress.incrementAndGet();
+        startRenderer();
+    }
+
+    /**
+     * Count an upgrade that has finished, successfully or not.
+     */
+    public void countUpgradeFinished() {
+        upgradesInProgress.decrementAndGet();
+    }
+
+    /**
+     * Stop rendering progress information and remove the current volatile
+     * line, if any.
+     */
+    public void stopProgress() {
+        ScheduledExecutorService stoppedRenderer;
+        synchronized (this) {
+            stoppedRenderer = renderer;
+            renderer = null;
+            currentActivity = null;
         }
-        if (!lastVolatile.equals(message)) {
-            System.out.print(ansi().eraseLine(Erase.ALL).cursorToColumn(0).a(message).cursorToColumn(0));
+        synchronized (outputLock) {
+            if (volatileState) {
+                stream.print(ansi().eraseLine(Erase.ALL).cursorToColumn(0));
+                volatileState = false;
+                lastVolatile = "";
+            }
+        }
+        if (stoppedRenderer != null) {
+            stoppedRenderer.shutdownNow();
+        }
+    }
+
+    private void startRenderer() {
+        // Called for every directory scanned: no lock once running
+        if (renderer == null) {
+            startRendererOnce();
+        }
+    }
+
+    private synchronized void startRendererOnce() {
+        if (renderer != null) {
+            return;
+        }
+        // Without a console, standard output is redirected to a file or pipe
+        interactive = System.console() != null && stream == System.out;
+        ScheduledExecutorService newRenderer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Handed over to the renderer thread by scheduling it
+        rateSampleTime = System.nanoTime();
+        lastSummaryTime = rateSampleTime;
+        long interval = Math.max(progressInterval.toMillis(), 10);
+        newRenderer.scheduleWithFixedDelay(this::render, interval, interval, TimeUnit.MILLISECONDS);
+        renderer = newRenderer;
+    }
+
+    /**
+     * Render a frame. Only ever called by the renderer thread, which owns the
+     * rate and summary fields.
+     */
+    private void render() {
+        if (renderer == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        long directories = directoriesScanned.sum();
+        long elapsed = now - rateSampleTime;
+        // Sample the rate once a second, but show a first estimate right away
+        if (elapsed > 0 && (elapsed >= TimeUnit.SECONDS.toNanos(1) || rateSampleDirectories == 0)) {
+            directoriesPerSecond = (directories - rateSampleDirectories) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+            if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+                rateSampleTime = now;
+                rateSampleDirectories = directories;
+            }
+        }
+
+        if (interactive) {
+            String activity = currentActivity;
+            if (activity == null) {
+                return;
+            }
+            String message = "[" + formatCounters(directories) + "] " + activity;
+            if (message.length() > MAX_VOLATILE_LENGTH) {
+                message = message.substring(0, MAX_VOLATILE_LENGTH - 3) + "...";
+            }
+            synchronized (outputLock) {
+                // Stopped or overwritten by a regular line in the meantime
+                if (renderer == null || currentActivity == null) {
+                    return;
+                }
+                if (!lastVolatile.equals(message)) {
+                    stream.print(ansi().eraseLine(Erase.ALL).cursorToColumn(0).a(message).cursorToColumn(0));
+                    stream.flush();
+                }
+                volatileState = true;
+                lastVolatile = message;
+            }
+        } else if (now - lastSummaryTime >= progressSummaryInterval.toNanos()) {
+            lastSummaryTime = now;
+            String summary = formatCounters(directories);
+            if (!lastSummary.equals(summary)) {
+                synchronized (outputLock) {
+                    stream.println("Progress: " + summary);
+                }
+                lastSummary = summary;
+            }
         }
-        volatileState = true;
-        lastVolatile = message;
+    }
+
+    private String formatCounters(long directories) {
+        StringBuilder counters = new StringBuilder();
+        counters.append(directories).append(" dirs (").append(directoriesPerSecond).append("/s)");
+        counters.append(", ").append(projectsFound.get()).append(" projects");
+        int upgrades = upgradesInProgress.get();
+        if (upgrades > 0) {
+            counters.append(", ").append(upgrades).append(" upgrading");
+        }
+        return counters.toString();
     }
 
     /**
@@ -59,12 +264,58 @@ public class ConsoleWriter {
      *            The message to be printed.
      */
     public void println(Object message) {
-        if (volatileState) {
-            System.out.print(ansi().eraseLine(Erase.ALL).cursorToColumn(0));
+        StringBuilder threadBuffer = buffer.get();
+        if (threadBuffer != null) {
+            threadBuffer.append(message).append(System.lineSeparator());
+            return;
+        }
+        printlnNow(message);
+    }
+
+    private void printlnNow(Object message) {
+        synchronized (outputLock) {
+            // Don't render an outdated activity after a regular line
+            currentActivity = null;
+            if (volatileState) {
+                stream.print(ansi().eraseLine(Erase.ALL).cursorToColumn(0));
+            }
+            stream.println(message);
+            volatileState = false;
+            lastVolatile = "";
+        }
+    }
+
+    /**
+     * Start buffering all regular lines printed by the current thread until
+     * {@link #flushBuffer()} is called. Volatile lines are not buffered.
+     */
+    public void startBuffering() {
+        buffer.set(new StringBuilder());
+    }
+
+    /**
+     * Print all lines buffered by the current thread at once, without lines
+     * of other threads in between, and stop buffering.
+     */
+    public void flushBuffer() {
+        StringBuilder threadBuffer = buffer.get();
+        buffer.remove();
+        if (threadBuffer != null && threadBuffer.length() > 0) {
+            threadBuffer.setLength(threadBuffer.length() - System.lineSeparator().length());
+            printlnNow(threadBuffer);
         }
-        System.out.println(message);
-        volatileState = false;
-        lastVolatile = "";
+    }
+
+    /**
+     * Stop buffering and return all lines buffered by the current thread
+     * instead of printing them, without any ANSI escape sequences.
+     * 
+     * @return The buffered lines.
+     */
+    public String takeBuffer() {
+        StringBuilder threadBuffer = buffer.get();
+        buffer.remove();
+        return threadBuffer == null ? "" : new AnsiString(threadBuffer).getPlain().toString();
     }
 
     /**
@@ -0,0 +1,321 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.eclipse.jgit.ignore.IgnoreNode;
+
+import io.github.netmikey.gradleversionchecker.PruneRules.Reason;
+
+/**
+ * Walks a directory tree in parallel on a work-stealing {@link ForkJoinPool}
+ * and collects all Gradle build directories, or other target directories, it
+ * finds.
+ */
+public class DirectoryWalker {
+
+    /**
+     * Matches Gradle build directories.
+     */
+    public static final Predicate<Path> BUILD_DIRS = dir -> Files.isRegularFile(dir.resolve("build.gradle"));
+
+    private final int parallelism;
+
+    private final PruneRules pruneRules;
+
+    private final Predicate<Path> target;
+
+    private final Consumer<Path> visitListener;
+
+    private final Map<Reason, LongAdder> pruned = new EnumMap<>(Reason.class);
+
+    /**
+     * Constructor for a walker that only prunes cycles.
+     *
+     * @param parallelism
+     *            The number of worker threads to be used for walking the tree.
+     * @param visitListener
+     *            A listener that will get called for every directory visited.
+     *            Might be called concurrently from multiple threads.
+     */
+    public DirectoryWalker(int parallelism, Consumer<Path> visitListener) {
+        this(parallelism, PruneRules.NONE, visitListener);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param parallelism
+     *            The number of worker threads to be used for walking the tree.
+     * @param pruneRules
+     *            The rules deciding which subtrees not to walk.
+     * @param visitListener
+     *            A listener that will get called for every directory visited.
+     *            Might be called concurrently from multiple threads.
+     */
+    public DirectoryWalker(int parallelism, PruneRules pruneRules, Consumer<Path> visitListener) {
+        this(parallelism, pruneRules, BUILD_DIRS, visitListener);
+    }
+
+    /**
+     * Constructor for a walker looking for other directories than Gradle
+     * build directories.
+     *
+     * @param parallelism
+     *            The number of worker threads to be used for walking the tree.
+     * @param pruneRules
+     *            The rules deciding which subtrees not to walk.
+     * @param target
+     *            Matches the directories to be found.
+     * @param visitListener
+     *            A listener that will get called for every directory visited.
+     *            Might be called concurrently from multiple threads.
+     */
+    public DirectoryWalker(int parallelism, PruneRules pruneRules, Predicate<Path> target,
+        Consumer<Path> visitListener) {
+
+        this.parallelism = parallelism;
+        this.pruneRules = pruneRules;
+        this.target = target;
+        this.visitListener = visitListener;
+        for (Reason reason : Reason.values()) {
+            pruned.put(reason, new LongAdder());
+        }
+    }
+
+    /**
+     * Walk the tree below the specified baseDir and find all Gradle build
+     * directories. Once a build directory is found, its subdirectories are not
+     * walked any further.
+     *
+     * @param baseDir
+     *            The directory to start with.
+     * @return The found build directories, sorted by path.
+     */
+    public List<File> findBuildDirs(File baseDir) {
+        return find(baseDir);
+    }
+
+    /**
+     * Walk the tree below the specified baseDir and find all directories
+     * matching the walker's target. Once a directory is found, its
+     * subdirectories are not walked any further.
+     *
+     * @param baseDir
+     *            The directory to start with.
+     * @return The found directories, sorted by path.
+     */
+    public List<File> find(File baseDir) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Path basePath = baseDir.toPath();
+            Ancestor base;
+            try {
+                base = new Ancestor(fileKey(basePath, Files.readAttributes(basePath, BasicFileAttributes.class)), null);
+            } catch (IOException e) {
+                // Not a directory or not readable: nothing to find here
+                return Collections.emptyList();
+            }
+            List<File> result = new ArrayList<>();
+            for (Path buildDir : pool.invoke(new WalkTask(basePath, basePath, 0, base, null))) {
+                result.add(buildDir.toFile());
+            }
+            result.sort(Comparator.comparing(File::getPath));
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Get the number of pruned subtrees per reason, for all walks so far.
+     *
+     * @return Returns the counts of all reasons that occurred.
+     */
+    public Map<Reason, Long> getPrunedCounts() {
+        Map<Reason, Long> counts = new EnumMap<>(Reason.class);
+        pruned.forEach((reason, count) -> {
+            if (count.sum() > 0) {
+                counts.put(reason, count.sum());
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * Walks a single directory and forks a sub-task for each of its
+     * subdirectories.
+     */
+    private class WalkTask extends RecursiveTask<List<Path>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path baseDir;
+
+        private final Path dir;
+
+        private final int depth;
+
+        private final Ancestor ancestors;
+
+        private final IgnoreScope ignoreScope;
+
+        WalkTask(Path baseDir, Path dir, int depth, Ancestor ancestors, IgnoreScope ignoreScope) {
+            this.baseDir = baseDir;
+            this.dir = dir;
+            this.depth = depth;
+            this.ancestors = ancestors;
+            this.ignoreScope = ignoreScope;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            visitListener.accept(dir);
+
+            if (target.test(dir)) {
+                // This is a target directory -> no recursion
+                return Collections.singletonList(dir);
+            }
+
+            List<WalkTask> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                IgnoreScope subDirIgnoreScope = pruneRules.isGitignore() ? ignoreScope(dir, ignoreScope) : null;
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes;
+                    try {
+                        // Follows symbolic links
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        // Broken link or not readable
+                        continue;
+                    }
+                    if (!attributes.isDirectory()) {
+                        continue;
+                    }
+
+                    Object fileKey = fileKey(entry, attributes);
+                    Reason reason = pruneRules.check(entry, baseDir.relativize(entry), depth + 1);
+                    if (reason == null && isIgnored(subDirIgnoreScope, entry)) {
+                        reason = Reason.GITIGNORE;
+                    }
+                    if (reason == null && isAncestor(fileKey)) {
+                        reason = Reason.CYCLE;
+                    }
+                    if (reason != null) {
+                        pruned.get(reason).increment();
+                        continue;
+                    }
+
+                    WalkTask subTask = new WalkTask(baseDir, entry, depth + 1, new Ancestor(fileKey, ancestors),
+                        subDirIgnoreScope);
+                    subTask.fork();
+                    subTasks.add(subTask);
+                }
+            } catch (IOException e) {
+                // Not a directory or not readable: nothing to find here
+            }
+
+            List<Path> result = new ArrayList<>();
+            for (WalkTask subTask : subTasks) {
+                result.addAll(subTask.join());
+            }
+            return result;
+        }
+
+        private boolean isAncestor(Object fileKey) {
+            for (Ancestor ancestor = ancestors; ancestor != null; ancestor = ancestor.parent) {
+                if (ancestor.fileKey.equals(fileKey)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static Object fileKey(Path dir, BasicFileAttributes attributes) throws IOException {
+        // Not all file systems provide file keys
+        return attributes.fileKey() != null ? attributes.fileKey() : dir.toRealPath();
+    }
+
+    /**
+     * Read the <code>.gitignore</code> file of the specified directory, if
+     * any. A nested repository starts over with its own rules.
+     */
+    private static IgnoreScope ignoreScope(Path dir, IgnoreScope parent) throws IOException {
+        if (Files.exists(dir.resolve(".git"))) {
+            parent = null;
+        }
+        Path gitignore = dir.resolve(".gitignore");
+        if (!Files.isRegularFile(gitignore)) {
+            return parent;
+        }
+        IgnoreNode node = new IgnoreNode();
+        try (InputStream in = Files.newInputStream(gitignore)) {
+            node.parse(in);
+        }
+        return new IgnoreScope(dir, node, parent);
+    }
+
+    private static boolean isIgnored(IgnoreScope scope, Path dir) {
+        // The rules of the nearest .gitignore file take precedence
+        for (; scope != null; scope = scope.parent) {
+            String path = scope.dir.relativize(dir).toString().replace(File.separatorChar, '/');
+            Boolean ignored = scope.node.checkIgnored(path, true);
+            if (ignored != null) {
+                return ignored;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The key of a directory above the one being walked, linking to its own
+     * parent.
+     */
+    private static class Ancestor {
+
+        private final Object fileKey;
+
+        private final Ancestor parent;
+
+        Ancestor(Object fileKey, Ancestor parent) {
+            this.fileKey = fileKey;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * The rules of a <code>.gitignore</code> file, linking to the rules of the
+     * file above it.
+     */
+    private static class IgnoreScope {
+
+        private final Path dir;
+
+        private final IgnoreNode node;
+
+        private final IgnoreScope parent;
+
+        IgnoreScope(Path dir, IgnoreNode node, IgnoreScope parent) {
+            this.dir = dir;
+            this.node = node;
+            this.parent = parent;
+        }
+    }
+}
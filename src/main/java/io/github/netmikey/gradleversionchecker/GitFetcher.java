@@ -0,0 +1,163 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.InvalidRemoteException;
+import org.eclipse.jgit.errors.NoRemoteRepositoryException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.github.netmikey.gradleversionchecker.RunProfile.Phase;
+
+/**
+ * Fetches Git repositories from their remotes, at most once per repository and
+ * run, no matter how many projects live in it.
+ * <p>
+ * All repositories of a scan can be fetched concurrently up front, while the
+ * projects are still being analyzed. The analysis then only waits for the
+ * fetch of the repository at hand.
+ */
+@Component
+public class GitFetcher {
+
+    @Autowired
+    private ConsoleWriter out;
+
+    @Autowired
+    private GitRepositories gitRepositories;
+
+    @Autowired
+    private RunProfile profile;
+
+    @Value("${fetch-parallelism:8}")
+    private int fetchParallelism;
+
+    @Value("${fetch-timeout:60s}")
+    private Duration fetchTimeout;
+
+    private final Map<File, CompletableFuture<Void>> fetches = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    /**
+     * Start fetching the repositories of the specified project directories in
+     * the background. Each repository is fetched only once.
+     *
+     * @param projectDirs
+     *            The project directories.
+     */
+    public void fetchAll(Collection<File> projectDirs) {
+        Set<File> gitDirs = new LinkedHashSet<>();
+        for (File projectDir : projectDirs) {
+            File gitDir = new FileRepositoryBuilder()
+                // scan environment GIT_* variables
+                .readEnvironment()
+                // scan up the file system tree
+                .findGitDir(projectDir)
+                .getGitDir();
+            if (gitDir != null) {
+                gitDirs.add(canonical(gitDir));
+            }
+        }
+        if (!gitDirs.isEmpty()) {
+            out.println(">> Fetching " + gitDirs.size() + " Git repositories in the background\n");
+            gitDirs.forEach(this::fetch);
+        }
+    }
+
+    /**
+     * Wait for the specified repository to be fetched, fetching it first if
+     * that hasn't been started yet.
+     *
+     * @param gitDir
+     *            The repository's Git directory.
+     */
+    public void awaitFetch(File gitDir) {
+        try {
+            fetch(canonical(gitDir)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Forget about all finished fetches, so that their repositories are
+     * fetched again the next time they are needed.
+     */
+    public void reset() {
+        fetches.values().removeIf(CompletableFuture::isDone);
+    }
+
+    /**
+     * Stop all fetches that are still running.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private CompletableFuture<Void> fetch(File gitDir) {
+        return fetches.computeIfAbsent(gitDir,
+            dir -> CompletableFuture.runAsync(() -> doFetch(dir), executor()));
+    }
+
+    private void doFetch(File gitDir) {
+        out.printVolatile(">> Fetching: " + gitDir.getParent());
+        try (Repository repository = gitRepositories.openGitDir(gitDir);
+            Git gitCall = new Git(repository)) {
+
+            profile.time(Phase.GIT_FETCH, gitDir.getParentFile(),
+                () -> gitCall.fetch().setTimeout((int) fetchTimeout.getSeconds()).call());
+        } catch (InvalidRemoteException e) {
+            if (!(e.getCause() instanceof NoRemoteRepositoryException)) {
+                throw new RuntimeException("Unable to run 'git fetch': " + e.getMessage(), e);
+            }
+            // remote 'origin' not present: that's fine
+        } catch (IOException | GitAPIException e) {
+            throw new RuntimeException("Unable to run 'git fetch': " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Math.max(fetchParallelism, 1), runnable -> {
+                Thread thread = new Thread(runnable, "git-fetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    private File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Registry of open JGit repositories, keyed by their canonical Git directory.
+ * <p>
+ * All phases and all projects working on the same repository share one
+ * {@link Repository} instance along with its configuration, refs and pack
+ * caches. Instances are reference counted: every {@link Repository} obtained
+ * from here must be closed by the caller, which only releases it. The
+ * registry itself holds one more reference to the most recently used
+ * repositories, and drops it when a repository is evicted.
+ */
+@Component
+public class GitRepositories {
+
+    @Value("${git-repository-cache-size:32}")
+    private int cacheSize;
+
+    @Value("${git-packed-git-limit:10MB}")
+    private DataSize packedGitLimit;
+
+    @Value("${git-packed-git-window-size:8KB}")
+    private DataSize packedGitWindowSize;
+
+    @Value("${git-packed-git-mmap:false}")
+    private boolean packedGitMmap;
+
+    @Value("${git-packed-git-open-files:128}")
+    private int packedGitOpenFiles;
+
+    @Value("${git-delta-base-cache-limit:10MB}")
+    private DataSize deltaBaseCacheLimit;
+
+    /**
+     * The cached repositories in least recently used order.
+     */
+    private final Map<File, Repository> repositories = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Apply the configured pack file cache settings, which are global to
+     * JGit.
+     */
+    @PostConstruct
+    public void configureWindowCache() {
+        WindowCacheConfig config = new WindowCacheConfig();
+        config.setPackedGitLimit(packedGitLimit.toBytes());
+        config.setPackedGitWindowSize((int) packedGitWindowSize.toBytes());
+        config.setPackedGitMMAP(packedGitMmap);
+        config.setPackedGitOpenFiles(packedGitOpenFiles);
+        config.setDeltaBaseCacheLimit((int) deltaBaseCacheLimit.toBytes());
+        config.install();
+    }
+
+    /**
+     * Open the repository the specified directory belongs to, searching up
+     * the file system tree.
+     *
+     * @param dir
+     *            A directory within the repository's working tree.
+     * @return The repository, which must be closed by the caller, or nothing
+     *         if the directory is not under Git version control.
+     * @throws IOException
+     *             If the repository cannot be opened.
+     */
+    public Optional<Repository> open(File dir) throws IOException {
+        File gitDir = new FileRepositoryBuilder()
+            // scan environment GIT_* variables
+            .readEnvironment()
+            // scan up the file system tree
+            .findGitDir(dir)
+            .getGitDir();
+        if (gitDir == null) {
+            return Optional.empty();
+        }
+        return Optional.of(openGitDir(gitDir));
+    }
+
+    /**
+     * Open the repository with the specified Git directory.
+     *
+     * @param gitDir
+     *            The repository's Git directory.
+     * @return The repository, which must be closed by the caller.
+     * @throws IOException
+     *             If the repository cannot be opened.
+     */
+    public synchronized Repository openGitDir(File gitDir) throws IOException {
+        File key = gitDir.getCanonicalFile();
+        Repository repository = repositories.get(key);
+        if (repository == null) {
+            repository = new FileRepositoryBuilder().setGitDir(key).readEnvironment().setup().build();
+            repositories.put(key, repository);
+            evict();
+        }
+        // One reference for the caller, the registry keeps its own
+        repository.incrementOpen();
+        return repository;
+    }
+
+    /**
+     * Release the registry's references to all repositories. Repositories
+     * that are still in use are closed once their last user closes them.
+     */
+    @PreDestroy
+    public synchronized void closeAll() {
+        repositories.values().forEach(Repository::close);
+        repositories.clear();
+    }
+
+    private void evict() {
+        Iterator<Repository> leastRecentlyUsed = repositories.values().iterator();
+        while (repositories.size() > Math.max(cacheSize, 1) && leastRecentlyUsed.hasNext()) {
+            leastRecentlyUsed.next().close();
+            leastRecentlyUsed.remove();
+        }
+    }
+}
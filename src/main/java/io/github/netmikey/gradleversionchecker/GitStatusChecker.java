@@ -0,0 +1,209 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.StatusCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.errors.NoWorkTreeException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks whether a project's Git working directory is clean.
+ */
+@Component
+public class GitStatusChecker {
+
+    /**
+     * The files touched by an upgrade, relative to the project directory.
+     */
+    public static final List<String> UPGRADE_PATHS = Arrays.asList("gradlew", "gradlew.bat", "gradle/wrapper",
+        "build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts", "gradle.properties");
+
+    @Value("${git-status:FULL}")
+    private Strategy strategy;
+
+    /**
+     * Get the configured strategy.
+     *
+     * @return Returns the strategy.
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Check whether the working directory is clean, according to the configured
+     * strategy.
+     *
+     * @param repository
+     *            The repository.
+     * @param projectDir
+     *            The directory of the project within the repository's working
+     *            tree.
+     * @return <code>true</code> if the working directory is considered clean.
+     */
+    public boolean isClean(Repository repository, File projectDir) {
+        return isClean(repository, projectDir, strategy);
+    }
+
+    /**
+     * Check whether the working directory is clean with a full
+     * <code>git status</code>, whatever the configured strategy, for
+     * decisions that must not miss any change.
+     *
+     * @param repository
+     *            The repository.
+     * @param projectDir
+     *            The directory of the project within the repository's working
+     *            tree.
+     * @return <code>true</code> if the working directory is clean.
+     */
+    public boolean isFullyClean(Repository repository, File projectDir) {
+        return isClean(repository, projectDir, Strategy.FULL);
+    }
+
+    private boolean isClean(Repository repository, File projectDir, Strategy strategy) {
+        try {
+            switch (strategy) {
+                case WRAPPER_ONLY:
+                    return fullStatus(repository, UPGRADE_PATHS, projectDir);
+                case INDEX_STAT:
+                    return indexStat(repository) || fullStatus(repository, null, projectDir);
+                default:
+                    return fullStatus(repository, null, projectDir);
+            }
+        } catch (NoWorkTreeException | IOException | GitAPIException e) {
+            throw new RuntimeException("Unable to run 'git status': " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Run <code>git status</code>, restricted to the specified paths relative
+     * to the project directory, if any.
+     */
+    private boolean fullStatus(Repository repository, List<String> paths, File projectDir)
+        throws GitAPIException, IOException {
+
+        try (Git gitCall = new Git(repository)) {
+            StatusCommand status = gitCall.status();
+            if (paths != null) {
+                String prefix = relativePath(repository, projectDir);
+                paths.forEach(path -> status.addPath(prefix + path));
+            }
+            return status.call().isClean();
+        }
+    }
+
+    /**
+     * Quick check that doesn't hash any file: the index must not differ from
+     * HEAD and all files in the working tree must have the size and modification
+     * time recorded in the index. Untracked files are not detected.
+     *
+     * @return <code>true</code> if the working tree is clean, <code>false</code>
+     *         if it might not be. Package-private for testing.
+     */
+    static boolean indexStat(Repository repository) throws IOException {
+        DirCache dirCache = repository.readDirCache();
+        long indexLastModified = repository.getIndexFile().lastModified();
+        File workTree = repository.getWorkTree();
+
+        for (int i = 0; i < dirCache.getEntryCount(); i++) {
+            DirCacheEntry entry = dirCache.getEntry(i);
+            if (entry.getStage() != DirCacheEntry.STAGE_0) {
+                // Merge conflict
+                return false;
+            }
+            if (FileMode.GITLINK.equals(entry.getFileMode())) {
+                continue;
+            }
+            // Files modified after the index was written might have changed
+            // without their size or modification time changing ("racy git")
+            if (entry.getLastModified() >= indexLastModified) {
+                return false;
+            }
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(
+                    new File(workTree, entry.getPathString()).toPath(), BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+                if (attributes.size() != entry.getLength()
+                    || attributes.lastModifiedTime().toMillis() != entry.getLastModified()) {
+                    return false;
+                }
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+        }
+
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null) {
+            return dirCache.getEntryCount() == 0;
+        }
+        try (RevWalk revWalk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            treeWalk.addTree(revWalk.parseCommit(head).getTree());
+            treeWalk.addTree(new DirCacheIterator(dirCache));
+            return !treeWalk.next();
+        }
+    }
+
+    /**
+     * Get the path of the specified directory relative to the repository's
+     * working tree, in the form used by Git commands.
+     *
+     * @param repository
+     *            The repository.
+     * @param dir
+     *            A directory within the repository's working tree.
+     * @return The relative path including a trailing slash, or an empty string
+     *         for the working tree itself.
+     * @throws IOException
+     *             If the paths cannot be resolved.
+     */
+    public static String relativePath(Repository repository, File dir) throws IOException {
+        String workTree = repository.getWorkTree().getCanonicalFile().toURI().getPath();
+        String path = dir.getCanonicalFile().toURI().getPath();
+        return path.startsWith(workTree) ? path.substring(workTree.length()) : "";
+    }
+
+    /**
+     * The possible ways of checking the working directory.
+     */
+    public static enum Strategy {
+        /**
+         * Run a full <code>git status</code> on the whole working tree.
+         */
+        FULL,
+
+        /**
+         * Run <code>git status</code> on the files touched by an upgrade only.
+         */
+        WRAPPER_ONLY,
+
+        /**
+         * Compare the working tree's file sizes and modification times with
+         * the index, and run a full <code>git status</code> only if that
+         * reveals potential changes.
+         */
+        INDEX_STAT;
+    }
+}
@@ -0,0 +1,204 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.LongRunningOperation;
+import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.internal.consumer.DefaultGradleConnector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Manages the Gradle Tooling API connections and the daemons behind them.
+ * <p>
+ * There is at most one open connection per project directory and Gradle
+ * version, which is reused by all phases working on the project until its
+ * Gradle version changes. All connections share the same Gradle user home and
+ * daemon base directory, and the daemons they start stop by themselves shortly
+ * after the run, or stay warm for hours in the long-running server and watch
+ * modes.
+ */
+@Component
+public class GradleConnections {
+
+    @Value("${gradle-user-home:}")
+    private String gradleUserHome;
+
+    @Value("${daemon-base-dir:}")
+    private String daemonBaseDir;
+
+    @Value("${daemon-jvm-args:}")
+    private String daemonJvmArgs;
+
+    private static final Duration DEFAULT_DAEMON_MAX_IDLE = Duration.ofMinutes(2);
+
+    private static final Duration LONG_RUNNING_DAEMON_MAX_IDLE = Duration.ofHours(3);
+
+    @Value("${daemon-max-idle:#{null}}")
+    private Duration daemonMaxIdle;
+
+    @Value("${server:false}")
+    private boolean server;
+
+    @Value("${watch:false}")
+    private boolean watch;
+
+    private final Map<ConnectionKey, ProjectConnection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * Get the connection to the specified project directory, opening it if
+     * necessary. The connection must not be closed by the caller.
+     *
+     * @param projectDir
+     *            The project's directory.
+     * @return The connection.
+     */
+    public ProjectConnection connect(File projectDir) {
+        return connect(projectDir, null);
+    }
+
+    /**
+     * Get the connection to the specified project directory, opening it with
+     * the specified Gradle version instead of the project's wrapper if
+     * necessary. The connection must not be closed by the caller.
+     *
+     * @param projectDir
+     *            The project's directory.
+     * @param gradleVersion
+     *            The Gradle version to be used or <code>null</code> to use the
+     *            project's wrapper.
+     * @return The connection.
+     */
+    public ProjectConnection connect(File projectDir, String gradleVersion) {
+        return connections.computeIfAbsent(new ConnectionKey(canonical(projectDir), gradleVersion),
+            key -> newConnection(key.dir, key.gradleVersion));
+    }
+
+    /**
+     * Close the connections to the specified project directory, if any. This
+     * must be called whenever the project's Gradle version has changed.
+     *
+     * @param projectDir
+     *            The project's directory.
+     */
+    public void invalidate(File projectDir) {
+        File dir = canonical(projectDir);
+        for (ConnectionKey key : connections.keySet()) {
+            if (key.dir.equals(dir)) {
+                ProjectConnection connection = connections.remove(key);
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply the configured daemon JVM arguments to the specified operation.
+     *
+     * @param <T>
+     *            The type of the operation.
+     * @param operation
+     *            The operation, i.e. a build or a model request.
+     * @return The operation, for chaining.
+     */
+    public <T extends LongRunningOperation> T configure(T operation) {
+        String jvmArgs = daemonJvmArgs.trim();
+        if (!jvmArgs.isEmpty()) {
+            operation.setJvmArguments(jvmArgs.split("\\s+"));
+        }
+        return operation;
+    }
+
+    /**
+     * Close all connections and release the Tooling API's resources.
+     */
+    @PreDestroy
+    public void closeAll() {
+        for (ConnectionKey key : connections.keySet()) {
+            ProjectConnection connection = connections.remove(key);
+            if (connection != null) {
+                connection.close();
+            }
+        }
+        DefaultGradleConnector.close();
+    }
+
+    private ProjectConnection newConnection(File projectDir, String gradleVersion) {
+        GradleConnector connector = GradleConnector.newConnector().forProjectDirectory(projectDir);
+        if (gradleVersion != null) {
+            connector.useGradleVersion(gradleVersion);
+        }
+        if (!gradleUserHome.isEmpty()) {
+            connector.useGradleUserHomeDir(new File(gradleUserHome));
+        }
+        if (connector instanceof DefaultGradleConnector) {
+            DefaultGradleConnector defaultConnector = (DefaultGradleConnector) connector;
+            if (!daemonBaseDir.isEmpty()) {
+                defaultConnector.daemonBaseDir(new File(daemonBaseDir));
+            }
+            defaultConnector.daemonMaxIdleTime((int) daemonMaxIdle().getSeconds(), TimeUnit.SECONDS);
+        }
+        return connector.connect();
+    }
+
+    /**
+     * Short-lived daemons suit single runs, but the server and watch modes
+     * need them warm between requests and events.
+     */
+    private Duration daemonMaxIdle() {
+        if (daemonMaxIdle != null) {
+            return daemonMaxIdle;
+        }
+        return server || watch ? LONG_RUNNING_DAEMON_MAX_IDLE : DEFAULT_DAEMON_MAX_IDLE;
+    }
+
+    private File canonical(File dir) {
+        try {
+            return dir.getCanonicalFile();
+        } catch (IOException e) {
+            return dir.getAbsoluteFile();
+        }
+    }
+
+    /**
+     * A project directory along with the Gradle version to connect with.
+     */
+    private static final class ConnectionKey {
+
+        private final File dir;
+
+        private final String gradleVersion;
+
+        ConnectionKey(File dir, String gradleVersion) {
+            this.dir = dir;
+            this.gradleVersion = gradleVersion;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ConnectionKey)) {
+                return false;
+            }
+            ConnectionKey other = (ConnectionKey) obj;
+            return dir.equals(other.dir) && Objects.equals(gradleVersion, other.gradleVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dir, gradleVersion);
+        }
+    }
+}
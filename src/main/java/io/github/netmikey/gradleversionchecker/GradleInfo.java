@@ -1,16 +1,26 @@
 package io.github.netmikey.gradleversionchecker;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.URL;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -20,40 +30,172 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @Component
 public class GradleInfo {
 
+    private static final String CACHE_FILE_NAME = "released-versions.json";
+
+    private static final String CACHE_METADATA_FILE_NAME = "released-versions.properties";
+
     @Autowired
-    private VersionNumberComparator versionComparator;
+    private ConsoleWriter out;
+
+    @Value("${versions-source:https://raw.githubusercontent.com/gradle/gradle/master/released-versions.json}")
+    private String versionsSource;
+
+    @Value("${versions-cache-ttl:24h}")
+    private Duration versionsCacheTtl;
+
+    @Value("${versions-connect-timeout:10s}")
+    private Duration versionsConnectTimeout;
+
+    @Value("${versions-read-timeout:30s}")
+    private Duration versionsReadTimeout;
 
-    private String latestGradleVersion;
+    @Value("${cache-dir:${user.home}/.gradle-version-tool}")
+    private File cacheDir;
+
+    private List<GradleVersion> releasedVersions;
 
     /**
      * Returns the latest Gradle release version.
-     * 
+     *
      * @return The latest Gradle version.
      */
+    public synchronized GradleVersion latestGradleVersion() {
+        List<GradleVersion> versions = releasedVersions();
+        if (versions.isEmpty()) {
+            throw new RuntimeException("ERROR: unable to retrieve latest Gradle version");
+        }
+        return versions.get(versions.size() - 1);
+    }
+
+    /**
+     * Forget the loaded release versions, so they are loaded again the next
+     * time they are needed. They are only downloaded again if the cached ones
+     * have expired.
+     */
+    public synchronized void refresh() {
+        releasedVersions = null;
+    }
+
+    /**
+     * Returns all final Gradle release versions, oldest first.
+     *
+     * @return The sorted, unmodifiable list of release versions.
+     */
     @SuppressWarnings("unchecked")
-    public synchronized String latestGradleVersion() {
-        if (latestGradleVersion == null) {
+    public synchronized List<GradleVersion> releasedVersions() {
+        if (releasedVersions == null) {
             try {
-                URL url = new URL("https://raw.githubusercontent.com/gradle/gradle/master/released-versions.json");
-                HttpURLConnection con = (HttpURLConnection) url.openConnection();
-                con.setRequestMethod("GET");
-
-                ObjectMapper mapper = new ObjectMapper();
-                Map<String, Object> ghData;
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()))) {
-                    ghData = mapper.readValue(in, Map.class);
-                }
+                Map<String, Object> ghData = new ObjectMapper().readValue(loadReleasedVersionsJson(), Map.class);
                 Pattern releaseVersionPattern = Pattern.compile("[\\d\\.]+");
-                latestGradleVersion = ((List<Map<String, String>>) ghData.get("finalReleases")).stream()
-                    .map(version -> version.get("version").toString())
-                    .filter(name -> releaseVersionPattern.matcher(name).matches())
-                    .sorted(versionComparator)
-                    .reduce((first, second) -> second)
-                    .orElseThrow(() -> new RuntimeException("ERROR: unable to retrieve latest Gradle version"));
+                releasedVersions = Collections.unmodifiableList(
+                    ((List<Map<String, String>>) ghData.get("finalReleases")).stream()
+                        .map(version -> version.get("version").toString())
+                        .filter(name -> releaseVersionPattern.matcher(name).matches())
+                        .map(GradleVersion::of)
+                        .sorted()
+                        .collect(Collectors.toList()));
             } catch (IOException e) {
                 throw new RuntimeException("ERROR: unable to load Gradle version information: " + e.getMessage());
             }
         }
-        return latestGradleVersion;
+        return releasedVersions;
+    }
+
+    private byte[] loadReleasedVersionsJson() throws IOException {
+        if (!versionsSource.startsWith("http://") && !versionsSource.startsWith("https://")) {
+            File sourceFile = versionsSource.startsWith("file:") ? new File(URI.create(versionsSource))
+                : new File(versionsSource);
+            return Files.readAllBytes(sourceFile.toPath());
+        }
+
+        File cacheFile = new File(cacheDir, CACHE_FILE_NAME);
+        Properties cacheMetadata = loadCacheMetadata();
+        boolean cachePresent = cacheFile.isFile() && versionsSource.equals(cacheMetadata.getProperty("source"));
+        if (cachePresent) {
+            Instant fetchedAt = Instant.ofEpochMilli(Long.parseLong(cacheMetadata.getProperty("fetched-at", "0")));
+            if (fetchedAt.plus(versionsCacheTtl).isAfter(Instant.now())) {
+                return Files.readAllBytes(cacheFile.toPath());
+            }
+        }
+
+        try {
+            HttpURLConnection con = (HttpURLConnection) new URL(versionsSource).openConnection();
+            con.setRequestMethod("GET");
+            con.setConnectTimeout((int) versionsConnectTimeout.toMillis());
+            con.setReadTimeout((int) versionsReadTimeout.toMillis());
+            if (cachePresent) {
+                // Only transfer the file again if it has changed
+                if (cacheMetadata.containsKey("etag")) {
+                    con.setRequestProperty("If-None-Match", cacheMetadata.getProperty("etag"));
+                }
+                if (cacheMetadata.containsKey("last-modified")) {
+                    con.setRequestProperty("If-Modified-Since", cacheMetadata.getProperty("last-modified"));
+                }
+            }
+
+            int status = con.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cachePresent) {
+                storeCacheMetadata(cacheMetadata);
+                return Files.readAllBytes(cacheFile.toPath());
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Server returned HTTP " + status + " for " + versionsSource);
+            }
+
+            byte[] json;
+            try (InputStream in = con.getInputStream()) {
+                json = StreamUtils.copyToByteArray(in);
+            }
+            storeCache(json, con.getHeaderField("ETag"), con.getHeaderField("Last-Modified"));
+            return json;
+        } catch (IOException e) {
+            if (cachePresent) {
+                out.println("WARNING: unable to refresh Gradle version information (" + e.getMessage()
+                    + "), using cached information");
+                return Files.readAllBytes(cacheFile.toPath());
+            }
+            throw e;
+        }
+    }
+
+    private Properties loadCacheMetadata() {
+        Properties cacheMetadata = new Properties();
+        File metadataFile = new File(cacheDir, CACHE_METADATA_FILE_NAME);
+        if (metadataFile.isFile()) {
+            try (InputStream in = Files.newInputStream(metadataFile.toPath())) {
+                cacheMetadata.load(in);
+            } catch (IOException e) {
+                // A broken cache is as good as no cache
+            }
+        }
+        return cacheMetadata;
+    }
+
+    private void storeCache(byte[] json, String etag, String lastModified) {
+        try {
+            cacheDir.mkdirs();
+            Files.write(new File(cacheDir, CACHE_FILE_NAME).toPath(), json);
+        } catch (IOException e) {
+            out.println("WARNING: unable to cache Gradle version information: " + e.getMessage());
+            return;
+        }
+        Properties cacheMetadata = new Properties();
+        cacheMetadata.setProperty("source", versionsSource);
+        if (etag != null) {
+            cacheMetadata.setProperty("etag", etag);
+        }
+        if (lastModified != null) {
+            cacheMetadata.setProperty("last-modified", lastModified);
+        }
+        storeCacheMetadata(cacheMetadata);
+    }
+
+    private void storeCacheMetadata(Properties cacheMetadata) {
+        cacheMetadata.setProperty("fetched-at", Long.toString(System.currentTimeMillis()));
+        try (OutputStream os = Files.newOutputStream(new File(cacheDir, CACHE_METADATA_FILE_NAME).toPath())) {
+            cacheMetadata.store(os, "Gradle version information cache");
+        } catch (IOException e) {
+            out.println("WARNING: unable to cache Gradle version information: " + e.getMessage());
+        }
     }
 }
@@ -0,0 +1,204 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * An immutable, pre-parsed Gradle version number like <code>5.4.1</code>,
+ * <code>5.0-rc-1</code> or <code>4.10-milestone-1</code>.
+ * <p>
+ * Versions are ordered numerically, missing trailing parts counting as zero
+ * (so <code>5.0</code> equals <code>5.0.0</code>). Pre-releases are ordered
+ * before their final release, milestones before previews before release
+ * candidates. Instances are interned, use {@link #of(String)} to obtain one.
+ */
+public final class GradleVersion implements Comparable<GradleVersion> {
+
+    private static final ConcurrentMap<String, GradleVersion> INSTANCES = new ConcurrentHashMap<>();
+
+    private final String version;
+
+    private final int[] parts;
+
+    private final Stage stage;
+
+    private final int stageNumber;
+
+    private final String qualifier;
+
+    private final int hashCode;
+
+    private GradleVersion(String version) {
+        this.version = version;
+
+        int qualifierStart = version.indexOf('-');
+        String numbers = qualifierStart < 0 ? version : version.substring(0, qualifierStart);
+        this.parts = parseParts(numbers, version);
+
+        if (qualifierStart < 0) {
+            this.stage = Stage.FINAL;
+            this.stageNumber = 0;
+            this.qualifier = "";
+        } else {
+            this.qualifier = version.substring(qualifierStart + 1).toLowerCase();
+            this.stage = Stage.of(qualifier);
+            this.stageNumber = stage == Stage.OTHER ? 0 : parseStageNumber(qualifier, stage);
+        }
+
+        int significantParts = parts.length;
+        while (significantParts > 1 && parts[significantParts - 1] == 0) {
+            significantParts--;
+        }
+        this.hashCode = 31 * Arrays.hashCode(Arrays.copyOf(parts, significantParts)) + qualifier.hashCode();
+    }
+
+    /**
+     * Get the instance representing the specified version string.
+     *
+     * @param version
+     *            The version string, e.g. <code>5.4.1</code>.
+     * @return The version.
+     * @throws IllegalArgumentException
+     *             If the string is not a valid Gradle version.
+     */
+    @JsonCreator
+    public static GradleVersion of(String version) {
+        GradleVersion instance = INSTANCES.get(version);
+        if (instance == null) {
+            instance = INSTANCES.computeIfAbsent(version.trim(), GradleVersion::new);
+            INSTANCES.putIfAbsent(version, instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Get the major version part.
+     *
+     * @return Returns the major version, e.g. <code>5</code> for
+     *         <code>5.4.1</code>.
+     */
+    public int getMajor() {
+        return parts[0];
+    }
+
+    /**
+     * Whether this is a final release rather than a pre-release.
+     *
+     * @return <code>true</code> iff this version has no qualifier.
+     */
+    public boolean isFinal() {
+        return stage == Stage.FINAL;
+    }
+
+    /**
+     * Does the specified version have the same major version as this one?
+     *
+     * @param other
+     *            The version to compare with.
+     * @return <code>true</code> iff both versions have the same major version
+     *         part.
+     */
+    public boolean isSameMajor(GradleVersion other) {
+        return parts[0] == other.parts[0];
+    }
+
+    @Override
+    public int compareTo(GradleVersion other) {
+        if (this == other) {
+            return 0;
+        }
+        int maxLength = Math.max(parts.length, other.parts.length);
+        for (int i = 0; i < maxLength; i++) {
+            int part = i < parts.length ? parts[i] : 0;
+            int otherPart = i < other.parts.length ? other.parts[i] : 0;
+            if (part != otherPart) {
+                return part < otherPart ? -1 : 1;
+            }
+        }
+        if (stage != other.stage) {
+            return stage.compareTo(other.stage);
+        }
+        if (stageNumber != other.stageNumber) {
+            return stageNumber < other.stageNumber ? -1 : 1;
+        }
+        return qualifier.compareTo(other.qualifier);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof GradleVersion && compareTo((GradleVersion) obj) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    @JsonValue
+    public String toString() {
+        return version;
+    }
+
+    private static int[] parseParts(String numbers, String version) {
+        if (numbers.isEmpty() || numbers.startsWith(".") || numbers.endsWith(".") || numbers.contains("..")) {
+            throw new IllegalArgumentException("Not a valid Gradle version: " + version);
+        }
+        int[] parts = new int[numbers.length() - numbers.replace(".", "").length() + 1];
+        int part = 0;
+        for (int i = 0; i < numbers.length(); i++) {
+            char c = numbers.charAt(i);
+            if (c == '.') {
+                part++;
+            } else if (c >= '0' && c <= '9') {
+                parts[part] = parts[part] * 10 + (c - '0');
+            } else {
+                throw new IllegalArgumentException("Not a valid Gradle version: " + version);
+            }
+        }
+        return parts;
+    }
+
+    private static int parseStageNumber(String qualifier, Stage stage) {
+        int number = 0;
+        for (int i = stage.prefix.length(); i < qualifier.length(); i++) {
+            char c = qualifier.charAt(i);
+            if (c >= '0' && c <= '9') {
+                number = number * 10 + (c - '0');
+            } else if (c != '-' || number > 0) {
+                break;
+            }
+        }
+        return number;
+    }
+
+    /**
+     * The release stages, in ascending order.
+     */
+    private static enum Stage {
+        OTHER(""),
+        MILESTONE("milestone"),
+        PREVIEW("preview"),
+        RC("rc"),
+        FINAL("");
+
+        private final String prefix;
+
+        Stage(String prefix) {
+            this.prefix = prefix;
+        }
+
+        static Stage of(String qualifier) {
+            for (Stage stage : new Stage[] { MILESTONE, PREVIEW, RC }) {
+                if (qualifier.startsWith(stage.prefix)) {
+                    return stage;
+                }
+            }
+            return OTHER;
+        }
+    }
+}
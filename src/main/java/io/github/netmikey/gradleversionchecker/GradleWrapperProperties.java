@@ -0,0 +1,92 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a project's <code>gradle/wrapper/gradle-wrapper.properties</code>
+ * file.
+ */
+public class GradleWrapperProperties {
+
+    /**
+     * The location of the wrapper properties file relative to the project
+     * directory.
+     */
+    public static final String PATH = "gradle/wrapper/gradle-wrapper.properties";
+
+    private static final Pattern DISTRIBUTION_URL_PATTERN = Pattern
+        .compile(".*/gradle-([^/]+?)-(bin|all)\\.zip");
+
+    private final Properties properties;
+
+    private GradleWrapperProperties(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Read the wrapper properties of the specified project directory.
+     *
+     * @param projectDir
+     *            The project's directory.
+     * @return The wrapper properties or an empty {@link Optional} if the
+     *         project has no wrapper properties file.
+     * @throws IOException
+     *             If the file exists but cannot be read.
+     */
+    public static Optional<GradleWrapperProperties> read(File projectDir) throws IOException {
+        File file = new File(projectDir, PATH);
+        if (!file.isFile()) {
+            return Optional.empty();
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return Optional.of(read(in));
+        }
+    }
+
+    /**
+     * Read wrapper properties from the specified stream, e.g. a Git blob.
+     *
+     * @param in
+     *            The stream, which is not closed.
+     * @return The wrapper properties.
+     * @throws IOException
+     *             If the stream cannot be read.
+     */
+    public static GradleWrapperProperties read(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        return new GradleWrapperProperties(properties);
+    }
+
+    /**
+     * Get the distributionUrl.
+     *
+     * @return Returns the distributionUrl or <code>null</code> if not set.
+     */
+    public String getDistributionUrl() {
+        return properties.getProperty("distributionUrl");
+    }
+
+    /**
+     * Extract the Gradle version from the distributionUrl.
+     *
+     * @return The Gradle version or an empty {@link Optional} if the
+     *         distributionUrl is missing or doesn't follow Gradle's naming
+     *         scheme.
+     */
+    public Optional<String> getGradleVersion() {
+        String distributionUrl = getDistributionUrl();
+        if (distributionUrl == null) {
+            return Optional.empty();
+        }
+        Matcher matcher = DISTRIBUTION_URL_PATTERN.matcher(distributionUrl.trim());
+        return matcher.matches() ? Optional.of(matcher.group(1)) : Optional.empty();
+    }
+}
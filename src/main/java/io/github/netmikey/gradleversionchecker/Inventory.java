@@ -0,0 +1,245 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.github.netmikey.gradleversionchecker.ProjectMetadata.Facet;
+
+/**
+ * The projects found so far, kept in memory across scans. Reading is always
+ * served from memory, even while a part of the inventory is being rescanned.
+ */
+@Component
+public class Inventory {
+
+    /**
+     * The facets loaded for every project in the inventory.
+     */
+    public static final Set<Facet> FACETS = EnumSet.of(Facet.GRADLE, Facet.GIT);
+
+    @Autowired
+    private Scanner scanner;
+
+    @Autowired
+    private ProjectAnalyzer analyzer;
+
+    @Autowired
+    private GradleInfo gradleInfo;
+
+    @Autowired
+    private ScanCache scanCache;
+
+    @Autowired
+    private ProjectRecordWriter records;
+
+    /**
+     * The projects by their canonical path.
+     */
+    private final Map<String, ProjectMetadata> projects = new ConcurrentSkipListMap<>();
+
+    /**
+     * Scan the specified directory and replace all projects below it with the
+     * ones found.
+     *
+     * @param dir
+     *            The directory to be scanned.
+     * @return The number of projects found.
+     */
+    public int rescan(File dir) {
+        rescan(dir, visitedDir -> {
+            // Nothing else to do
+        });
+        return list(dir).size();
+    }
+
+    /**
+     * Scan the specified directory and replace all projects below it with the
+     * ones found.
+     *
+     * @param dir
+     *            The directory to be scanned.
+     * @param visitListener
+     *            A listener that will get called for every directory visited
+     *            by the scan. Might be called concurrently from multiple
+     *            threads.
+     * @return The changes to the inventory.
+     */
+    public synchronized List<Change> rescan(File dir, Consumer<Path> visitListener) {
+        String prefix = canonicalPath(dir);
+        gradleInfo.refresh();
+
+        List<Change> changes = new ArrayList<>();
+        Set<String> found = new HashSet<>();
+        scanner.scan(dir, FACETS, visitListener, project -> {
+            found.add(project.getProjectDir().getPath());
+            put(project).ifPresent(changes::add);
+        });
+        changes.addAll(remove(path -> isBelow(path, prefix) && !found.contains(path)));
+        scanCache.save();
+        return changes;
+    }
+
+    /**
+     * Analyze the specified project again and update it in the inventory.
+     *
+     * @param projectDir
+     *            The project's directory.
+     * @return The change to the inventory, or nothing if the project didn't
+     *         change.
+     */
+    public synchronized Optional<Change> refresh(File projectDir) {
+        Optional<ProjectMetadata> project = analyzer.analyzeProjectDir(projectDir, FACETS);
+        if (project.isPresent()) {
+            return put(project.get());
+        }
+        String path = canonicalPath(projectDir);
+        return remove(path::equals).stream().findFirst();
+    }
+
+    /**
+     * Remove all projects below the specified directory, e.g. because it has
+     * been deleted.
+     *
+     * @param dir
+     *            The directory.
+     * @return The changes to the inventory.
+     */
+    public synchronized List<Change> remove(File dir) {
+        String prefix = canonicalPath(dir);
+        return remove(path -> isBelow(path, prefix));
+    }
+
+    private Optional<Change> put(ProjectMetadata project) {
+        ProjectMetadata previous = projects.put(project.getProjectDir().getPath(), project);
+        if (previous == null) {
+            return Optional.of(new Change(ChangeType.ADDED, project));
+        }
+        if (!records.toRecord(previous).equals(records.toRecord(project))) {
+            return Optional.of(new Change(ChangeType.CHANGED, project));
+        }
+        return Optional.empty();
+    }
+
+    private List<Change> remove(Predicate<String> pathFilter) {
+        List<Change> changes = new ArrayList<>();
+        projects.entrySet().removeIf(entry -> {
+            if (pathFilter.test(entry.getKey())) {
+                changes.add(new Change(ChangeType.REMOVED, entry.getValue()));
+                return true;
+            }
+            return false;
+        });
+        return changes;
+    }
+
+    /**
+     * List all projects below the specified directory.
+     *
+     * @param dir
+     *            The directory, or <code>null</code> for all projects.
+     * @return The projects, sorted by path.
+     */
+    public List<ProjectMetadata> list(File dir) {
+        String prefix = dir == null ? null : canonicalPath(dir);
+        List<ProjectMetadata> result = new ArrayList<>();
+        projects.forEach((path, project) -> {
+            if (prefix == null || isBelow(path, prefix)) {
+                result.add(project);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Get the project in the specified directory.
+     *
+     * @param projectDir
+     *            The project's directory.
+     * @return The project, if it is in the inventory.
+     */
+    public Optional<ProjectMetadata> get(File projectDir) {
+        return Optional.ofNullable(projects.get(canonicalPath(projectDir)));
+    }
+
+    private static boolean isBelow(String path, String prefix) {
+        return path.equals(prefix)
+            || path.startsWith(prefix.endsWith(File.separator) ? prefix : prefix + File.separator);
+    }
+
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * A project that has been added to, changed in or removed from the
+     * inventory.
+     */
+    public static class Change {
+
+        private final ChangeType type;
+
+        private final ProjectMetadata project;
+
+        Change(ChangeType type, ProjectMetadata project) {
+            this.type = type;
+            this.project = project;
+        }
+
+        /**
+         * Get the type.
+         *
+         * @return Returns the type.
+         */
+        public ChangeType getType() {
+            return type;
+        }
+
+        /**
+         * Get the project. For removed projects, this is the project as it was
+         * last seen.
+         *
+         * @return Returns the project.
+         */
+        public ProjectMetadata getProject() {
+            return project;
+        }
+    }
+
+    /**
+     * The types of changes to the inventory.
+     */
+    public static enum ChangeType {
+        /**
+         * A project that wasn't known before.
+         */
+        ADDED,
+
+        /**
+         * A known project whose listed information changed.
+         */
+        CHANGED,
+
+        /**
+         * A known project that no longer exists.
+         */
+        REMOVED;
+    }
+}
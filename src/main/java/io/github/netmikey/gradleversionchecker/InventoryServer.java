@@ -0,0 +1,423 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.fusesource.jansi.Ansi.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.netmikey.gradleversionchecker.ProjectMetadata.Facet;
+import io.github.netmikey.gradleversionchecker.UpgradeAction.Outcome;
+
+/**
+ * Serves the {@link Inventory} over HTTP as JSON, and runs upgrades as
+ * asynchronous jobs.
+ * <p>
+ * Endpoints:
+ * <ul>
+ * <li><code>GET /projects[?dir=...]</code> lists the projects, optionally only
+ * those below a directory</li>
+ * <li><code>POST /rescan[?dir=...]</code> scans a directory again, by default
+ * the whole scanned directory</li>
+ * <li><code>POST /upgrades?project=...</code> starts upgrading a project and
+ * returns the job</li>
+ * <li><code>GET /upgrades</code> and <code>GET /upgrades/{id}</code> return
+ * the upgrade jobs</li>
+ * </ul>
+ * The <code>POST</code> endpoints change the inventory and the projects, so
+ * they are only enabled with a <code>server-token</code>, which requests have
+ * to send as a bearer token.
+ */
+@Component
+public class InventoryServer {
+
+    @Autowired
+    private ConsoleWriter out;
+
+    @Autowired
+    private Inventory inventory;
+
+    @Autowired
+    private ProjectAnalyzer analyzer;
+
+    @Autowired
+    private UpgradeAction upgrade;
+
+    @Autowired
+    private GitFetcher gitFetcher;
+
+    @Autowired
+    private ProjectRecordWriter records;
+
+    @Autowired
+    private InventoryStore store;
+
+    @Value("${server-address:localhost}")
+    private String address;
+
+    @Value("${server-port:8080}")
+    private int port;
+
+    @Value("${server-token:}")
+    private String token;
+
+    @Value("${server-job-history:100}")
+    private int jobHistory;
+
+    @Value("${parallelism:1}")
+    private int parallelism;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<Long, Job> jobs = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong jobIds = new AtomicLong();
+
+    private File baseDir;
+
+    private HttpServer server;
+
+    private ExecutorService requestExecutor;
+
+    private ExecutorService jobExecutor;
+
+    /**
+     * Start serving requests in the background.
+     *
+     * @param baseDir
+     *            The directory rescanned by default.
+     * @throws IOException
+     *             If the server cannot be started.
+     */
+    public synchronized void start(File baseDir) throws IOException {
+        this.baseDir = baseDir;
+        jobExecutor = Executors.newFixedThreadPool(Math.max(parallelism, 1));
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        server.createContext("/projects", handler("GET", this::listProjects));
+        server.createContext("/rescan", handler("POST", guarded(this::rescan)));
+        server.createContext("/upgrades", exchange -> {
+            if ("POST".equals(exchange.getRequestMethod())) {
+                handler("POST", guarded(this::startUpgrade)).handle(exchange);
+            } else {
+                handler("GET", this::getUpgrades).handle(exchange);
+            }
+        });
+        // Requests are cheap, except for rescans, which are serialized anyway
+        requestExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(requestExecutor);
+        server.start();
+        out.println("Serving the inventory on http://" + address + ":" + server.getAddress().getPort() + "/"
+            + (token.isEmpty() ? ", read-only without a server-token" : "") + "\n");
+    }
+
+    /**
+     * Stop serving requests and cancel all upgrade jobs that haven't started
+     * yet.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+            requestExecutor.shutdownNow();
+            jobExecutor.shutdownNow();
+        }
+    }
+
+    private Response listProjects(HttpExchange exchange) {
+        String dir = query(exchange).get("dir");
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (ProjectMetadata project : inventory.list(dir == null ? null : new File(dir))) {
+            result.add(records.toRecord(project));
+        }
+        return new Response(200, result);
+    }
+
+    private Response rescan(HttpExchange exchange) {
+        String dir = query(exchange).get("dir");
+        File scanDir = dir == null ? baseDir : new File(dir);
+        if (!scanDir.isDirectory()) {
+            return Response.error(400, "Not a directory: " + dir);
+        }
+        int found = inventory.rescan(scanDir);
+        store.recordRun(scanDir, Main.Action.LIST, inventory.list(scanDir));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("dir", scanDir.getAbsolutePath());
+        result.put("projects", found);
+        return new Response(200, result);
+    }
+
+    private Response startUpgrade(HttpExchange exchange) {
+        String dir = query(exchange).get("project");
+        if (dir == null) {
+            return Response.error(400, "Missing parameter: project");
+        }
+        Optional<ProjectMetadata> project = inventory.get(new File(dir));
+        if (!project.isPresent()) {
+            return Response.error(404, "Unknown project: " + dir);
+        }
+
+        Job job = new Job(jobIds.incrementAndGet(), project.get().getProjectDir());
+        jobs.put(job.id, job);
+        jobExecutor.execute(() -> runUpgrade(job));
+        exchange.getResponseHeaders().set("Location", "/upgrades/" + job.id);
+        return new Response(202, job.toRecord());
+    }
+
+    private Response getUpgrades(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        String id = path.replaceFirst("^/upgrades/?", "");
+        if (id.isEmpty()) {
+            List<Map<String, Object>> result = new ArrayList<>();
+            jobs.values().forEach(job -> result.add(job.toRecord()));
+            return new Response(200, result);
+        }
+        Job job;
+        try {
+            job = jobs.get(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            job = null;
+        }
+        return job == null ? Response.error(404, "Unknown job: " + id) : new Response(200, job.toRecord());
+    }
+
+    private void runUpgrade(Job job) {
+        job.state = JobState.RUNNING;
+        job.startedAt = Instant.now();
+        // Remote tracking information must be fresh for every upgrade
+        gitFetcher.reset();
+        out.startBuffering();
+        try {
+            Optional<ProjectMetadata> project = analyzer.analyzeForUpgrade(job.projectDir,
+                EnumSet.of(Facet.GRADLE, Facet.GIT));
+            if (project.isPresent()) {
+                Outcome outcome = upgrade.upgradeNow(project.get());
+                job.failure = outcome.getFailure();
+                job.state = outcome.isFailed() ? JobState.FAILED
+                    : outcome == Outcome.SUCCEEDED ? JobState.SUCCEEDED : JobState.SKIPPED;
+            } else {
+                job.failure = "Not a Gradle wrapper project anymore";
+                job.state = JobState.FAILED;
+            }
+        } catch (RuntimeException e) {
+            job.failure = String.valueOf(e.getMessage());
+            job.state = JobState.FAILED;
+        } finally {
+            // Whatever the outcome, the project might have changed
+            try {
+                inventory.refresh(job.projectDir);
+            } catch (RuntimeException e) {
+                out.println(ansi().fgBrightRed().a("    Unable to refresh the inventory: " + e.getMessage()).reset());
+            }
+            job.output = out.takeBuffer();
+            job.finishedAt = Instant.now();
+            out.println(job.output);
+            evictJobs();
+        }
+    }
+
+    /**
+     * Forget about the oldest finished jobs beyond the configured history,
+     * along with their output.
+     */
+    private void evictJobs() {
+        synchronized (jobs) {
+            long finished = jobs.values().stream().filter(Job::isFinished).count();
+            Iterator<Job> oldest = jobs.values().iterator();
+            while (finished > Math.max(jobHistory, 0) && oldest.hasNext()) {
+                if (oldest.next().isFinished()) {
+                    oldest.remove();
+                    finished--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Only handle the request if it carries the server token.
+     */
+    private RequestHandler guarded(RequestHandler requestHandler) {
+        return exchange -> {
+            if (token.isEmpty()) {
+                return Response.error(403, "Read-only: start the server with a server-token to enable changes");
+            }
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            // Compare in constant time, so the token cannot be guessed byte by byte
+            if (authorization == null || !MessageDigest.isEqual(("Bearer " + token).getBytes(StandardCharsets.UTF_8),
+                authorization.getBytes(StandardCharsets.UTF_8))) {
+
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                return Response.error(401, "Missing or wrong server-token");
+            }
+            return requestHandler.handle(exchange);
+        };
+    }
+
+    private HttpHandler handler(String method, RequestHandler requestHandler) {
+        return exchange -> {
+            Response response;
+            try {
+                response = method.equals(exchange.getRequestMethod()) ? requestHandler.handle(exchange)
+                    : Response.error(405, "Method not allowed: " + exchange.getRequestMethod());
+            } catch (RuntimeException e) {
+                response = Response.error(500, String.valueOf(e.getMessage()));
+            }
+            byte[] body = mapper.writeValueAsBytes(response.body);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        };
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            String[] nameAndValue = parameter.split("=", 2);
+            try {
+                parameters.put(URLDecoder.decode(nameAndValue[0], "UTF-8"),
+                    nameAndValue.length > 1 ? URLDecoder.decode(nameAndValue[1], "UTF-8") : "");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Handles a request of a specific method.
+     */
+    @FunctionalInterface
+    private interface RequestHandler {
+        Response handle(HttpExchange exchange);
+    }
+
+    /**
+     * A response's status code and the body to be serialized as JSON.
+     */
+    private static class Response {
+
+        private final int status;
+
+        private final Object body;
+
+        Response(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response error(int status, String message) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("error", message);
+            return new Response(status, body);
+        }
+    }
+
+    /**
+     * An asynchronous upgrade of a project.
+     */
+    private static class Job {
+
+        private final long id;
+
+        private final File projectDir;
+
+        private final Instant submittedAt = Instant.now();
+
+        private volatile JobState state = JobState.PENDING;
+
+        private volatile Instant startedAt;
+
+        private volatile Instant finishedAt;
+
+        private volatile String failure;
+
+        private volatile String output;
+
+        Job(long id, File projectDir) {
+            this.id = id;
+            this.projectDir = projectDir;
+        }
+
+        boolean isFinished() {
+            return finishedAt != null;
+        }
+
+        Map<String, Object> toRecord() {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("id", id);
+            record.put("projectDir", projectDir.getPath());
+            record.put("state", state);
+            record.put("submittedAt", submittedAt.toString());
+            record.put("startedAt", startedAt == null ? null : startedAt.toString());
+            record.put("finishedAt", finishedAt == null ? null : finishedAt.toString());
+            record.put("failure", failure);
+            record.put("output", output);
+            return record;
+        }
+    }
+
+    /**
+     * The states of an upgrade job.
+     */
+    private static enum JobState {
+        /**
+         * Waiting for an upgrade thread.
+         */
+        PENDING,
+
+        /**
+         * Being upgraded.
+         */
+        RUNNING,
+
+        /**
+         * Upgraded.
+         */
+        SUCCEEDED,
+
+        /**
+         * Not upgraded: up to date, not eligible, or a dry run.
+         */
+        SKIPPED,
+
+        /**
+         * The upgrade failed, see the job's failure and output.
+         */
+        FAILED;
+    }
+}
@@ -0,0 +1,525 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.github.netmikey.gradleversionchecker.Inventory.Change;
+import io.github.netmikey.gradleversionchecker.Inventory.ChangeType;
+
+/**
+ * Persists the projects found by each run in an embedded H2 database, so that
+ * they can be queried later without scanning again.
+ * <p>
+ * The store keeps the current state of every project ever found, indexed by
+ * path, Gradle version and Gradle major version, along with the history of
+ * the last runs: every project each run found, and whether the run found it
+ * added, changed or removed.
+ */
+@Component
+public class InventoryStore {
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS run (id BIGINT AUTO_INCREMENT PRIMARY KEY, started_at TIMESTAMP NOT NULL, "
+            + "finished_at TIMESTAMP, base_dir VARCHAR NOT NULL, action VARCHAR NOT NULL, project_count INT)",
+        "CREATE TABLE IF NOT EXISTS project (project_dir VARCHAR PRIMARY KEY, run_id BIGINT NOT NULL, "
+            + "gradle_version VARCHAR, gradle_major INT, up_to_date BOOLEAN, same_major_as_current BOOLEAN, "
+            + "under_git BOOLEAN, git_dir VARCHAR, branch VARCHAR)",
+        "CREATE INDEX IF NOT EXISTS project_gradle_version ON project (gradle_version)",
+        "CREATE INDEX IF NOT EXISTS project_gradle_major ON project (gradle_major)",
+        "CREATE TABLE IF NOT EXISTS project_history (run_id BIGINT NOT NULL, project_dir VARCHAR NOT NULL, "
+            + "change_type VARCHAR, gradle_version VARCHAR, gradle_major INT, up_to_date BOOLEAN, "
+            + "same_major_as_current BOOLEAN, under_git BOOLEAN, git_dir VARCHAR, branch VARCHAR, "
+            + "PRIMARY KEY (run_id, project_dir), FOREIGN KEY (run_id) REFERENCES run (id) ON DELETE CASCADE)",
+        "CREATE INDEX IF NOT EXISTS project_history_project_dir ON project_history (project_dir)" };
+
+    private static final String PROJECT_COLUMNS = "project_dir, gradle_version, gradle_major, up_to_date, "
+        + "same_major_as_current, under_git, git_dir, branch";
+
+    @Autowired
+    private ConsoleWriter out;
+
+    @Value("${store:true}")
+    private boolean enabled;
+
+    @Value("${store-file:}")
+    private String storeFile;
+
+    @Value("${store-history:50}")
+    private int history;
+
+    @Value("${cache-dir:${user.home}/.gradle-version-tool}")
+    private File cacheDir;
+
+    private Connection connection;
+
+    private long runId;
+
+    private String runBaseDir;
+
+    /**
+     * Start recording a run. Failing to open the store only disables it for
+     * this run.
+     *
+     * @param baseDir
+     *            The directory being scanned.
+     * @param action
+     *            The action of the run.
+     */
+    public synchronized void startRun(File baseDir, Main.Action action) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            runBaseDir = canonicalPath(baseDir);
+            try (PreparedStatement insert = connection()
+                .prepareStatement("INSERT INTO run (started_at, base_dir, action) VALUES (?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                insert.setTimestamp(1, Timestamp.from(Instant.now()));
+                insert.setString(2, runBaseDir);
+                insert.setString(3, action.name());
+                insert.executeUpdate();
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    keys.next();
+                    runId = keys.getLong(1);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            out.println("Inventory store not available, the results won't be stored: " + e.getMessage() + "\n");
+            close();
+            enabled = false;
+        }
+    }
+
+    /**
+     * Record a project found by the current run.
+     *
+     * @param project
+     *            The project.
+     */
+    public synchronized void record(ProjectMetadata project) {
+        if (!enabled || runId == 0) {
+            return;
+        }
+        String projectDir = project.getProjectDir().getPath();
+        try {
+            ProjectMetadata previous = null;
+            try (PreparedStatement select = connection
+                .prepareStatement("SELECT " + PROJECT_COLUMNS + " FROM project WHERE project_dir = ?")) {
+                select.setString(1, projectDir);
+                try (ResultSet row = select.executeQuery()) {
+                    if (row.next()) {
+                        previous = toProject(row);
+                    }
+                }
+            }
+            ChangeType change = previous == null ? ChangeType.ADDED
+                : differs(previous, project) ? ChangeType.CHANGED : null;
+
+            try (PreparedStatement merge = connection
+                .prepareStatement("MERGE INTO project (" + PROJECT_COLUMNS + ", run_id) KEY (project_dir) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                setProject(merge, 1, project);
+                merge.setLong(9, runId);
+                merge.executeUpdate();
+            }
+            insertHistory(project, change);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to write the inventory store: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finish recording the current run: all projects below the scanned
+     * directory that haven't been found again are recorded as removed, and
+     * the history of runs is trimmed.
+     */
+    public synchronized void finishRun() {
+        if (!enabled || runId == 0) {
+            return;
+        }
+        try {
+            List<ProjectMetadata> removed = new ArrayList<>();
+            try (PreparedStatement select = connection.prepareStatement("SELECT " + PROJECT_COLUMNS
+                + " FROM project WHERE run_id <> ? AND (project_dir = ? OR project_dir LIKE ? ESCAPE '\\')")) {
+                select.setLong(1, runId);
+                select.setString(2, runBaseDir);
+                select.setString(3, likeBelow(runBaseDir));
+                try (ResultSet rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        removed.add(toProject(rows));
+                    }
+                }
+            }
+            for (ProjectMetadata project : removed) {
+                insertHistory(project, ChangeType.REMOVED);
+                try (PreparedStatement delete = connection
+                    .prepareStatement("DELETE FROM project WHERE project_dir = ?")) {
+                    delete.setString(1, project.getProjectDir().getPath());
+                    delete.executeUpdate();
+                }
+            }
+
+            try (PreparedStatement update = connection.prepareStatement("UPDATE run SET finished_at = ?, "
+                + "project_count = (SELECT COUNT(*) FROM project_history WHERE run_id = ? "
+                + "AND (change_type IS NULL OR change_type <> 'REMOVED')) WHERE id = ?")) {
+                update.setTimestamp(1, Timestamp.from(Instant.now()));
+                update.setLong(2, runId);
+                update.setLong(3, runId);
+                update.executeUpdate();
+            }
+            try (PreparedStatement trim = connection.prepareStatement(
+                "DELETE FROM run WHERE id <= (SELECT id FROM run ORDER BY id DESC LIMIT 1 OFFSET ?)")) {
+                trim.setInt(1, Math.max(history, 1));
+                trim.executeUpdate();
+            }
+            connection.commit();
+            runId = 0;
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to write the inventory store: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Record a whole run at once, for projects that have been found by
+     * scanning the specified directory but not recorded along the way.
+     *
+     * @param baseDir
+     *            The directory that has been scanned.
+     * @param action
+     *            The action of the run.
+     * @param projects
+     *            All projects found below the directory.
+     */
+    public synchronized void recordRun(File baseDir, Main.Action action, List<ProjectMetadata> projects) {
+        startRun(baseDir, action);
+        projects.forEach(this::record);
+        finishRun();
+    }
+
+    /**
+     * Find the current projects below the specified directory.
+     *
+     * @param dir
+     *            The directory.
+     * @param gradleMajor
+     *            Only projects on this Gradle major version, or
+     *            <code>null</code> for all.
+     * @param gradleVersion
+     *            Only projects on this Gradle version, or <code>null</code>
+     *            for all.
+     * @return The projects, sorted by path.
+     */
+    public synchronized List<ProjectMetadata> findProjects(File dir, Integer gradleMajor, String gradleVersion) {
+        String prefix = canonicalPath(dir);
+        StringBuilder sql = new StringBuilder("SELECT " + PROJECT_COLUMNS
+            + " FROM project WHERE (project_dir = ? OR project_dir LIKE ? ESCAPE '\\')");
+        if (gradleMajor != null) {
+            sql.append(" AND gradle_major = ?");
+        }
+        if (gradleVersion != null) {
+            sql.append(" AND gradle_version = ?");
+        }
+        sql.append(" ORDER BY project_dir");
+        try (PreparedStatement select = connection().prepareStatement(sql.toString())) {
+            int parameter = 1;
+            select.setString(parameter++, prefix);
+            select.setString(parameter++, likeBelow(prefix));
+            if (gradleMajor != null) {
+                select.setInt(parameter++, gradleMajor);
+            }
+            if (gradleVersion != null) {
+                select.setString(parameter++, gradleVersion);
+            }
+            List<ProjectMetadata> projects = new ArrayList<>();
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    projects.add(toProject(rows));
+                }
+            }
+            return projects;
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read the inventory store: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Find the changes a run found below the specified directory.
+     *
+     * @param dir
+     *            The directory.
+     * @param run
+     *            The id of the run, or <code>null</code> for the latest
+     *            finished run that covers the directory.
+     * @return The changes, sorted by path.
+     */
+    public synchronized List<Change> findChanges(File dir, Long run) {
+        String prefix = canonicalPath(dir);
+        try (PreparedStatement select = connection().prepareStatement("SELECT " + PROJECT_COLUMNS
+            + ", change_type FROM project_history WHERE run_id = ? AND change_type IS NOT NULL "
+            + "AND (project_dir = ? OR project_dir LIKE ? ESCAPE '\\') ORDER BY project_dir")) {
+            Long runId = run != null ? run : latestRun(prefix);
+            List<Change> changes = new ArrayList<>();
+            if (runId == null) {
+                return changes;
+            }
+            select.setLong(1, runId);
+            select.setString(2, prefix);
+            select.setString(3, likeBelow(prefix));
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    changes.add(new Change(ChangeType.valueOf(rows.getString("change_type")), toProject(rows)));
+                }
+            }
+            return changes;
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read the inventory store: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Find all runs in the history, latest first.
+     *
+     * @return The runs.
+     */
+    public synchronized List<Run> findRuns() {
+        try (Statement select = connection().createStatement();
+            ResultSet rows = select.executeQuery("SELECT * FROM run ORDER BY id DESC")) {
+
+            List<Run> runs = new ArrayList<>();
+            while (rows.next()) {
+                Timestamp finishedAt = rows.getTimestamp("finished_at");
+                runs.add(new Run(rows.getLong("id"), rows.getTimestamp("started_at").toInstant(),
+                    finishedAt == null ? null : finishedAt.toInstant(), rows.getString("base_dir"),
+                    rows.getString("action"), rows.getInt("project_count")));
+            }
+            return runs;
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read the inventory store: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Close the store, discarding the current run if it hasn't been finished.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (connection != null) {
+            try {
+                connection.rollback();
+                connection.close();
+            } catch (SQLException e) {
+                // Closing anyway
+            }
+            connection = null;
+        }
+    }
+
+    private Long latestRun(String dir) throws SQLException {
+        // The latest run that scanned the directory or one of its parents
+        try (PreparedStatement select = connection.prepareStatement("SELECT id, base_dir FROM run "
+            + "WHERE finished_at IS NOT NULL ORDER BY id DESC")) {
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    String baseDir = rows.getString("base_dir");
+                    if (dir.equals(baseDir) || dir.startsWith(withSeparator(baseDir))) {
+                        return rows.getLong("id");
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void insertHistory(ProjectMetadata project, ChangeType change) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO project_history ("
+            + PROJECT_COLUMNS + ", run_id, change_type) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            setProject(insert, 1, project);
+            insert.setLong(9, runId);
+            insert.setString(10, change == null ? null : change.name());
+            insert.executeUpdate();
+        }
+    }
+
+    private static void setProject(PreparedStatement statement, int first, ProjectMetadata project)
+        throws SQLException {
+
+        GradleVersion gradleVersion = project.getGradleVersion();
+        statement.setString(first, project.getProjectDir().getPath());
+        statement.setString(first + 1, gradleVersion == null ? null : gradleVersion.toString());
+        if (gradleVersion == null) {
+            statement.setNull(first + 2, Types.INTEGER);
+        } else {
+            statement.setInt(first + 2, gradleVersion.getMajor());
+        }
+        statement.setBoolean(first + 3, project.isGradleVersionUpToDate());
+        statement.setBoolean(first + 4, project.isGradleVersionSameMajorAsCurrent());
+        statement.setBoolean(first + 5, project.isUnderGitVersionControl());
+        statement.setString(first + 6, project.getGitDir() == null ? null : project.getGitDir().getPath());
+        statement.setString(first + 7, project.getBranch());
+    }
+
+    private static ProjectMetadata toProject(ResultSet row) throws SQLException {
+        ProjectMetadata project = new ProjectMetadata();
+        project.setProjectDir(new File(row.getString("project_dir")));
+        String gradleVersion = row.getString("gradle_version");
+        project.setGradleVersion(gradleVersion == null ? null : GradleVersion.of(gradleVersion));
+        project.setGradleVersionUpToDate(row.getBoolean("up_to_date"));
+        project.setGradleVersionSameMajorAsCurrent(row.getBoolean("same_major_as_current"));
+        project.setUnderGitVersionControl(row.getBoolean("under_git"));
+        String gitDir = row.getString("git_dir");
+        project.setGitDir(gitDir == null ? null : new File(gitDir));
+        project.setBranch(row.getString("branch"));
+        return project;
+    }
+
+    private static boolean differs(ProjectMetadata previous, ProjectMetadata project) {
+        return !Objects.equals(previous.getGradleVersion(), project.getGradleVersion())
+            || previous.isGradleVersionUpToDate() != project.isGradleVersionUpToDate()
+            || previous.isGradleVersionSameMajorAsCurrent() != project.isGradleVersionSameMajorAsCurrent()
+            || previous.isUnderGitVersionControl() != project.isUnderGitVersionControl()
+            || !Objects.equals(previous.getGitDir(), project.getGitDir())
+            || !Objects.equals(previous.getBranch(), project.getBranch());
+    }
+
+    /**
+     * Get the JDBC URL of the database. Package-private for testing.
+     *
+     * @return The URL.
+     */
+    String url() {
+        File file = storeFile.isEmpty() ? new File(cacheDir, "inventory") : new File(storeFile);
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        // Closed on shutdown by the store itself, after the last run has been
+        // finished
+        return "jdbc:h2:file:" + file.getAbsolutePath() + ";DB_CLOSE_ON_EXIT=FALSE";
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null) {
+            connection = DriverManager.getConnection(url());
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : SCHEMA) {
+                    statement.execute(sql);
+                }
+            }
+            connection.setAutoCommit(false);
+        }
+        return connection;
+    }
+
+    private static String likeBelow(String dir) {
+        return withSeparator(dir).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    private static String withSeparator(String dir) {
+        return dir.endsWith(File.separator) ? dir : dir + File.separator;
+    }
+
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * A recorded run.
+     */
+    public static class Run {
+
+        private final long id;
+
+        private final Instant startedAt;
+
+        private final Instant finishedAt;
+
+        private final String baseDir;
+
+        private final String action;
+
+        private final int projectCount;
+
+        Run(long id, Instant startedAt, Instant finishedAt, String baseDir, String action, int projectCount) {
+            this.id = id;
+            this.startedAt = startedAt;
+            this.finishedAt = finishedAt;
+            this.baseDir = baseDir;
+            this.action = action;
+            this.projectCount = projectCount;
+        }
+
+        /**
+         * Get the id.
+         *
+         * @return Returns the id.
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Get the startedAt.
+         *
+         * @return Returns the startedAt.
+         */
+        public Instant getStartedAt() {
+            return startedAt;
+        }
+
+        /**
+         * Get the finishedAt.
+         *
+         * @return Returns the finishedAt, <code>null</code> if the run hasn't
+         *         finished.
+         */
+        public Instant getFinishedAt() {
+            return finishedAt;
+        }
+
+        /**
+         * Get the baseDir.
+         *
+         * @return Returns the baseDir.
+         */
+        public String getBaseDir() {
+            return baseDir;
+        }
+
+        /**
+         * Get the action.
+         *
+         * @return Returns the action.
+         */
+        public String getAction() {
+            return action;
+        }
+
+        /**
+         * Get the projectCount.
+         *
+         * @return Returns the projectCount.
+         */
+        public int getProjectCount() {
+            return projectCount;
+        }
+    }
+}
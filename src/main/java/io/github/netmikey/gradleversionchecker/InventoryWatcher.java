@@ -0,0 +1,358 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.github.netmikey.gradleversionchecker.Inventory.Change;
+
+/**
+ * Keeps the {@link Inventory} up to date after an initial scan by watching the
+ * file system, and reports every change as a delta event.
+ * <p>
+ * Only the files a project's metadata depends on are watched: its build and
+ * wrapper files and its Git <code>HEAD</code>. New and deleted projects are
+ * noticed through the directories the initial scan walked through without
+ * finding a project. Where native file system events aren't available or
+ * reliable, e.g. on network file systems, the same files and directories are
+ * polled instead.
+ */
+@Component
+public class InventoryWatcher {
+
+    private static final String[] PROJECT_FILES = { "build.gradle", "settings.gradle",
+        "gradle/wrapper/gradle-wrapper.properties" };
+
+    /**
+     * How long to wait for further events before processing a batch of them:
+     * editors and Git touch several files at once.
+     */
+    private static final long SETTLE_MILLIS = 200;
+
+    @Autowired
+    private Inventory inventory;
+
+    @Autowired
+    private Scanner scanner;
+
+    @Autowired
+    private ConsoleWriter out;
+
+    @Autowired
+    private ListAction list;
+
+    @Value("${watch-mode:NATIVE}")
+    private Mode mode;
+
+    @Value("${watch-poll-interval:10s}")
+    private Duration pollInterval;
+
+    private File baseDir;
+
+    private WatchService watchService;
+
+    /**
+     * The directories below the base directory that aren't projects
+     * themselves, with their child directories' names.
+     */
+    private final Map<Path, Set<String>> containers = new HashMap<>();
+
+    /**
+     * The file signatures of the projects, by project directory.
+     */
+    private final Map<File, String> signatures = new HashMap<>();
+
+    /**
+     * The watched directories, with the project directories depending on
+     * them. Container directories are tracked in {@link #containers}.
+     */
+    private final Map<Path, Set<File>> watchedProjectDirs = new HashMap<>();
+
+    /**
+     * Scan the specified directory into the inventory, report all projects
+     * found as added, and start tracking them.
+     *
+     * @param baseDir
+     *            The directory to be watched.
+     * @throws IOException
+     *             If the file system cannot be watched natively.
+     */
+    public synchronized void initialize(File baseDir) throws IOException {
+        this.baseDir = baseDir.getCanonicalFile();
+        if (Mode.NATIVE.equals(mode)) {
+            watchService = this.baseDir.toPath().getFileSystem().newWatchService();
+        }
+        rescan(this.baseDir);
+        String how = watchService != null ? "native file system events"
+            : "polling every " + pollInterval.toMillis() + "ms";
+        out.println("Watching " + signatures.size() + " Gradle projects in " + this.baseDir + " (" + how + ")\n");
+    }
+
+    /**
+     * Process file system changes until the thread gets interrupted or the
+     * watcher gets closed.
+     */
+    public void run() {
+        try {
+            if (watchService == null) {
+                poll();
+            } else {
+                processEvents();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // The watcher has been closed: that's how it ends
+        }
+    }
+
+    /**
+     * Stop watching the file system.
+     */
+    @PreDestroy
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    private void poll() throws InterruptedException {
+        while (true) {
+            Thread.sleep(pollInterval.toMillis());
+            synchronized (this) {
+                checkAll();
+            }
+            out.stopProgress();
+        }
+    }
+
+    private void processEvents() throws InterruptedException {
+        while (true) {
+            Set<Path> changedDirs = new LinkedHashSet<>();
+            boolean overflow = false;
+            WatchKey key = watchService.take();
+            while (key != null) {
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    overflow |= OVERFLOW.equals(event.kind());
+                }
+                changedDirs.add(dir);
+                key.reset();
+                key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            synchronized (this) {
+                if (overflow) {
+                    checkAll();
+                } else {
+                    changedDirs.forEach(this::check);
+                }
+            }
+            out.stopProgress();
+        }
+    }
+
+    private void checkAll() {
+        new ArrayList<>(containers.keySet()).forEach(this::checkContainer);
+        new ArrayList<>(signatures.keySet()).forEach(this::checkProject);
+    }
+
+    private void check(Path dir) {
+        if (containers.containsKey(dir)) {
+            checkContainer(dir);
+        }
+        Set<File> projectDirs = watchedProjectDirs.get(dir);
+        if (projectDirs != null) {
+            new ArrayList<>(projectDirs).forEach(this::checkProject);
+        }
+    }
+
+    private void checkContainer(Path dir) {
+        Set<String> knownChildren = containers.get(dir);
+        if (knownChildren == null) {
+            // Removed in the meantime
+            return;
+        }
+        if (!Files.isDirectory(dir)) {
+            // Reported by the parent directory, unless it's the base directory
+            if (dir.equals(baseDir.toPath())) {
+                forget(dir);
+                emit(inventory.remove(dir.toFile()));
+            }
+            return;
+        }
+        if (Files.isRegularFile(dir.resolve("build.gradle"))) {
+            // The directory might have become a project
+            forget(dir);
+            rescan(dir.toFile());
+            return;
+        }
+        Set<String> children = childDirs(dir);
+        for (String child : knownChildren) {
+            if (!children.contains(child)) {
+                forget(dir.resolve(child));
+                emit(inventory.remove(dir.resolve(child).toFile()));
+            }
+        }
+        for (String child : children) {
+            File childDir = dir.resolve(child).toFile();
+            if (!knownChildren.contains(child) && !scanner.isPruned(baseDir, childDir)) {
+                rescan(childDir);
+            }
+        }
+        containers.put(dir, children);
+    }
+
+    private void checkProject(File projectDir) {
+        String signature = signature(projectDir);
+        if (!signature.equals(signatures.get(projectDir))) {
+            Optional<Change> change = inventory.refresh(projectDir);
+            // Settled even if nothing listed changed, or polling would refresh it forever
+            signatures.replace(projectDir, signature);
+            change.ifPresent(refreshed -> emit(Collections.singletonList(refreshed)));
+        }
+    }
+
+    private void rescan(File dir) {
+        Queue<Path> visitedDirs = new ConcurrentLinkedQueue<>();
+        List<Change> changes = inventory.rescan(dir, visitedDirs::add);
+        emit(changes);
+        for (Path visitedDir : visitedDirs) {
+            Path container = visitedDir.toAbsolutePath();
+            if (!containers.containsKey(container) && !inventory.get(container.toFile()).isPresent()) {
+                containers.put(container, childDirs(container));
+                register(container);
+            }
+        }
+    }
+
+    private void emit(List<Change> changes) {
+        for (Change change : changes) {
+            ProjectMetadata project = change.getProject();
+            switch (change.getType()) {
+                case REMOVED:
+                    forget(project.getProjectDir().toPath());
+                    break;
+                default:
+                    track(project);
+                    break;
+            }
+            list.acceptChange(change);
+        }
+    }
+
+    private void track(ProjectMetadata project) {
+        File projectDir = project.getProjectDir();
+        signatures.put(projectDir, signature(projectDir));
+        List<Path> dirs = new ArrayList<>();
+        dirs.add(projectDir.toPath());
+        dirs.add(projectDir.toPath().resolve("gradle/wrapper"));
+        if (project.getGitDir() != null) {
+            dirs.add(project.getGitDir().toPath());
+        }
+        for (Path dir : dirs) {
+            if (Files.isDirectory(dir)) {
+                watchedProjectDirs.computeIfAbsent(dir, d -> new HashSet<>()).add(projectDir);
+                register(dir);
+            }
+        }
+    }
+
+    private void forget(Path dir) {
+        containers.keySet().removeIf(container -> container.startsWith(dir));
+        signatures.keySet().removeIf(projectDir -> projectDir.toPath().startsWith(dir));
+        watchedProjectDirs.values().forEach(projectDirs -> projectDirs.removeIf(
+            projectDir -> projectDir.toPath().startsWith(dir)));
+        watchedProjectDirs.values().removeIf(Set::isEmpty);
+    }
+
+    private void register(Path dir) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        } catch (IOException e) {
+            out.println("Unable to watch " + dir + ", it will be checked on the next overflow only: "
+                + e.getMessage());
+        }
+    }
+
+    /**
+     * The sizes and modification times of the files the project's metadata
+     * depends on, including the Git <code>HEAD</code> of its repository.
+     */
+    private String signature(File projectDir) {
+        StringBuilder signature = new StringBuilder();
+        List<File> files = new ArrayList<>();
+        for (String file : PROJECT_FILES) {
+            files.add(new File(projectDir, file));
+        }
+        inventory.get(projectDir).map(ProjectMetadata::getGitDir)
+            .ifPresent(gitDir -> files.add(new File(gitDir, "HEAD")));
+        for (File file : files) {
+            signature.append(file.exists() ? file.lastModified() + ":" + file.length() : "-").append(';');
+        }
+        return signature.toString();
+    }
+
+    private static Set<String> childDirs(Path dir) {
+        Set<String> children = new TreeSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            entries.forEach(entry -> children.add(entry.getFileName().toString()));
+        } catch (IOException e) {
+            // Unreadable directories have no children as far as we're concerned
+        }
+        return children;
+    }
+
+    /**
+     * The ways of noticing file system changes.
+     */
+    public static enum Mode {
+        /**
+         * Native file system events through a {@link WatchService}.
+         */
+        NATIVE,
+
+        /**
+         * Polling the modification times, for file systems that don't
+         * support native events, e.g. network file systems.
+         */
+        POLL;
+    }
+}
@@ -2,11 +2,16 @@ package io.github.netmikey.gradleversionchecker;
 
 import static org.fusesource.jansi.Ansi.*;
 
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import io.github.netmikey.gradleversionchecker.Inventory.Change;
+import io.github.netmikey.gradleversionchecker.ProjectMetadata.Facet;
+
 /**
  * Encapsulates the logic of the list action.
  */
@@ -16,12 +21,29 @@ public class ListAction implements Consumer<ProjectMetadata> {
     @Autowired
     private ConsoleWriter out;
 
+    @Autowired
+    private ProjectRecordWriter records;
+
     private int numFound;
 
+    /**
+     * The facets of a project this action reads.
+     * 
+     * @return The facets.
+     */
+    public Set<Facet> requiredFacets() {
+        return EnumSet.of(Facet.GRADLE, Facet.GIT);
+    }
+
     @Override
     public void accept(ProjectMetadata project) {
         numFound++;
 
+        if (records.isMachineReadable()) {
+            records.write(project);
+            return;
+        }
+
         out.println(">> Project: " + project.getProjectDir().getPath());
         out.println(ansi().a("    Gradle: ").bold().format("%-10s ", project.getGradleVersion()).boldOff()
             .a(out.formatVersionUpToDate(project)));
@@ -31,6 +53,23 @@ public class ListAction implements Consumer<ProjectMetadata> {
         out.println("");
     }
 
+    /**
+     * Print a change of a project, either as a record with the type of the
+     * change as an additional field or as one line of text.
+     * 
+     * @param change
+     *            The change.
+     */
+    public void acceptChange(Change change) {
+        ProjectMetadata project = change.getProject();
+        if (records.isMachineReadable()) {
+            records.write(change.getType().name(), project);
+            return;
+        }
+        out.println(">> " + change.getType() + ": " + project.getProjectDir()
+            + (project.getGradleVersion() == null ? "" : " (Gradle " + project.getGradleVersion() + ")"));
+    }
+
     /**
      * Get the numFound.
      * 
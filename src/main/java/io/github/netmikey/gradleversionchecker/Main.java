@@ -2,7 +2,12 @@ package io.github.netmikey.gradleversionchecker;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -12,6 +17,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.support.PropertiesLoaderUtils;
 
+import io.github.netmikey.gradleversionchecker.ProjectMetadata.Facet;
+
 /**
  * The application's main class.
  */
@@ -21,6 +28,12 @@ public class Main implements CommandLineRunner {
     @Autowired
     private Scanner scanner;
 
+    @Autowired
+    private BareRepositoryScanner bareScanner;
+
+    @Autowired
+    private BareRepositoryUpgrader bareUpgrader;
+
     @Autowired
     private ConsoleWriter out;
 
@@ -30,12 +43,45 @@ public class Main implements CommandLineRunner {
     @Autowired
     private UpgradeAction upgrade;
 
+    @Autowired
+    private ScanCache scanCache;
+
+    @Autowired
+    private ProjectRecordWriter records;
+
+    @Autowired
+    private RunProfile profile;
+
+    @Autowired
+    private Inventory inventory;
+
+    @Autowired
+    private InventoryServer inventoryServer;
+
+    @Autowired
+    private InventoryWatcher inventoryWatcher;
+
+    @Autowired
+    private InventoryStore store;
+
+    @Autowired
+    private QueryAction query;
+
     @Value("${dir:.}")
     private String dir;
 
     @Value("${action:LIST}")
     private Action action;
 
+    @Value("${server:false}")
+    private boolean server;
+
+    @Value("${watch:false}")
+    private boolean watch;
+
+    @Value("${bare:false}")
+    private boolean bare;
+
     /**
      * The java main method.
      * 
@@ -60,14 +106,86 @@ public class Main implements CommandLineRunner {
 
     @Override
     public void run(String... args) throws Exception {
+        if (records.isWritingToStandardOutput()) {
+            out.useStandardError();
+        }
+        if (server || watch) {
+            // Keep running until the process is stopped
+            if (watch) {
+                inventoryWatcher.initialize(new File(dir));
+                out.stopProgress();
+            } else {
+                int found = inventory.rescan(new File(dir));
+                out.println(found + " Gradle project" + (found > 1 ? "s" : "") + " found");
+            }
+            // Only whole scans are runs, the changes noticed by watching aren't
+            store.recordRun(new File(dir), Action.LIST, inventory.list(new File(dir)));
+            if (server) {
+                inventoryServer.start(new File(dir));
+            }
+            if (watch) {
+                inventoryWatcher.run();
+            }
+            return;
+        }
         switch (action) {
             case LIST:
-                scanner.scan(new File(dir), list);
+                store.startRun(new File(dir), action);
+                scan(list.requiredFacets(), project -> {
+                    store.record(project);
+                    list.accept(project);
+                });
+                store.finishRun();
+                records.close();
                 out.println(list.getNumFound() + " Gradle project" + (list.getNumFound() > 1 ? "s" : "") + " found");
                 break;
             case UPGRADE:
-                scanner.scan(new File(dir), upgrade);
+                Consumer<ProjectMetadata> upgrader = bare ? bareUpgrader : upgrade;
+                List<ProjectMetadata> found = Collections.synchronizedList(new ArrayList<>());
+                store.startRun(new File(dir), action);
+                try {
+                    scan(upgrade.requiredFacets(), project -> {
+                        found.add(project);
+                        upgrader.accept(project);
+                    });
+                    if (bare) {
+                        bareUpgrader.finish();
+                    }
+                } finally {
+                    // Wait for the upgrades already running and release their
+                    // pool even if the scan failed; bare repositories are only
+                    // upgraded once the scan has succeeded
+                    if (!bare) {
+                        upgrade.finish();
+                    }
+                }
+                // The projects are stored as the upgrades left them
+                for (ProjectMetadata project : found) {
+                    store.record(bare ? bareUpgrader.currentState(project) : upgrade.currentState(project));
+                }
+                store.finishRun();
                 break;
+            case QUERY:
+                query.run(new File(dir));
+                return;
+        }
+        out.stopProgress();
+        reportScanCache();
+        profile.report();
+    }
+
+    private void scan(Set<Facet> facets, Consumer<ProjectMetadata> callback) {
+        if (bare) {
+            bareScanner.scan(new File(dir), callback);
+        } else {
+            scanner.scan(new File(dir), facets, callback);
+        }
+    }
+
+    private void reportScanCache() {
+        if (scanCache.isEnabled()) {
+            scanCache.save();
+            out.println("Scan cache: " + scanCache.getHits() + " hit(s), " + scanCache.getMisses() + " miss(es)");
         }
     }
 
@@ -83,6 +201,11 @@ public class Main implements CommandLineRunner {
         /**
          * Upgrade Gradle versions.
          */
-        UPGRADE;
+        UPGRADE,
+
+        /**
+         * Query the projects found by earlier runs.
+         */
+        QUERY;
     }
 }
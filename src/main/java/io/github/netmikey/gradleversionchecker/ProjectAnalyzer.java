@@ -2,25 +2,23 @@ package io.github.netmikey.gradleversionchecker;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.Status;
-import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.api.errors.InvalidRemoteException;
-import org.eclipse.jgit.errors.NoRemoteRepositoryException;
-import org.eclipse.jgit.errors.NoWorkTreeException;
 import org.eclipse.jgit.lib.BranchTrackingStatus;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
-import org.gradle.tooling.GradleConnector;
-import org.gradle.tooling.ProjectConnection;
 import org.gradle.tooling.model.build.BuildEnvironment;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import io.github.netmikey.gradleversionchecker.Main.Action;
+import io.github.netmikey.gradleversionchecker.ProjectMetadata.Facet;
+import io.github.netmikey.gradleversionchecker.RunProfile.Phase;
 
 /**
  * Does the actual inspection of a found project directory.
@@ -32,7 +30,22 @@ public class ProjectAnalyzer {
     private GradleInfo gradleInfo;
 
     @Autowired
-    private VersionNumberComparator versionComparator;
+    private ScanCache scanCache;
+
+    @Autowired
+    private GradleConnections gradleConnections;
+
+    @Autowired
+    private GitStatusChecker gitStatusChecker;
+
+    @Autowired
+    private GitFetcher gitFetcher;
+
+    @Autowired
+    private GitRepositories gitRepositories;
+
+    @Autowired
+    private RunProfile profile;
 
     @Value("${action:LIST}")
     private Action action;
@@ -40,6 +53,43 @@ public class ProjectAnalyzer {
     @Value("${dry-run:false}")
     private boolean dryRun;
 
+    @Value("${analysis-mode:STATIC}")
+    private AnalysisMode analysisMode;
+
+    /**
+     * Prepare the analysis of the specified project directories, which are
+     * going to be analyzed one by one afterwards. In upgrade mode, this starts
+     * fetching the Git repositories of all projects that might need an
+     * upgrade in the background.
+     * 
+     * @param projectDirs
+     *            The project directories.
+     */
+    public void prepare(Collection<File> projectDirs) {
+        if (!isFetchingFromRemote()) {
+            return;
+        }
+        List<File> upgradeCandidates = new ArrayList<>();
+        for (File projectDir : projectDirs) {
+            if (new File(projectDir, "gradlew").isFile() && !isStaticallyUpToDate(projectDir)) {
+                upgradeCandidates.add(projectDir);
+            }
+        }
+        gitFetcher.fetchAll(upgradeCandidates);
+    }
+
+    private boolean isStaticallyUpToDate(File projectDir) {
+        try {
+            Optional<String> version = GradleWrapperProperties.read(projectDir)
+                .flatMap(GradleWrapperProperties::getGradleVersion);
+            return version.isPresent()
+                && GradleVersion.of(version.get()).compareTo(gradleInfo.latestGradleVersion()) >= 0;
+        } catch (IOException | IllegalArgumentException e) {
+            // Let the analysis sort it out
+            return false;
+        }
+    }
+
     /**
      * Main entry method for analyzing the specified project.
      * 
@@ -48,82 +98,244 @@ public class ProjectAnalyzer {
      * @return The metadata extracted from the project directory.
      */
     public Optional<ProjectMetadata> analyzeProjectDir(File projectDir) {
+        return analyzeProjectDir(projectDir, EnumSet.noneOf(Facet.class));
+    }
+
+    /**
+     * Main entry method for analyzing the specified project. The specified
+     * facets are loaded right away in one batch, all others are loaded lazily
+     * when they are read.
+     * 
+     * @param projectDir
+     *            The project's directory.
+     * @param facets
+     *            The facets to be loaded right away.
+     * @return The metadata extracted from the project directory.
+     */
+    public Optional<ProjectMetadata> analyzeProjectDir(File projectDir, Set<Facet> facets) {
         // Only process projects that use the wrapper
         if (!new File(projectDir, "gradlew").isFile()) {
             return Optional.empty();
         }
 
+        try {
+            ProjectMetadata project = null;
+            ScanCache.Fingerprint fingerprint = null;
+            if (scanCache.isEnabled()) {
+                fingerprint = profile.time(Phase.FINGERPRINT, projectDir, () -> scanCache.fingerprint(projectDir));
+                fingerprint.setGitStatus(gitStatusChecker.getStrategy().name());
+                // Remote tracking information is only up to date after a fetch
+                if (!isFetchingFromRemote()) {
+                    project = scanCache.lookup(projectDir, fingerprint).orElse(null);
+                }
+            }
+
+            if (project == null) {
+                project = new ProjectMetadata();
+                project.setProjectDir(projectDir.getCanonicalFile());
+            } else if (project.isLoaded(Facet.GRADLE)) {
+                // The latest Gradle version might have changed since
+                applyGradleVersion(project, project.getGradleVersion());
+            }
+
+            boolean fetch = isFetchingFromRemote();
+            ScanCache.Fingerprint cacheFingerprint = fingerprint;
+            project.setLoader((metadata, missingFacets) -> {
+                loadFacets(metadata, missingFacets, fetch);
+                if (cacheFingerprint != null) {
+                    // The cache keeps a copy of its own: store every facet loaded,
+                    // it leaves out those that can change unnoticed
+                    scanCache.store(projectDir, cacheFingerprint, metadata);
+                }
+            });
+            project.load(facets);
+            return Optional.of(project);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Analyze the specified project for an upgrade outside of a scan: the scan
+     * cache is bypassed, and the Git remote tracking information is fetched
+     * from the remote unless in dry-run mode, whatever the action.
+     * 
+     * @param projectDir
+     *            The project's directory.
+     * @param facets
+     *            The facets to be loaded right away.
+     * @return The metadata extracted from the project directory.
+     */
+    public Optional<ProjectMetadata> analyzeForUpgrade(File projectDir, Set<Facet> facets) {
+        if (!new File(projectDir, "gradlew").isFile()) {
+            return Optional.empty();
+        }
         try {
             ProjectMetadata project = new ProjectMetadata();
-            analyzeGradle(projectDir, project);
-            analyzeGit(project);
+            project.setProjectDir(projectDir.getCanonicalFile());
+            project.setLoader((metadata, missingFacets) -> loadFacets(metadata, missingFacets, !dryRun));
+            project.load(facets);
             return Optional.of(project);
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
+    private void loadFacets(ProjectMetadata project, Set<Facet> facets, boolean fetch) {
+        try {
+            if (facets.contains(Facet.GRADLE)) {
+                analyzeGradle(project.getProjectDir(), project);
+            }
+            EnumSet<Facet> gitFacets = EnumSet.of(Facet.GIT, Facet.GIT_STATUS, Facet.GIT_TRACKING);
+            gitFacets.retainAll(facets);
+            if (!gitFacets.isEmpty()) {
+                analyzeGit(project, gitFacets, fetch);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
     private void analyzeGradle(File projectDir, ProjectMetadata project) throws IOException {
-        try (ProjectConnection projectConnection = GradleConnector.newConnector().forProjectDirectory(projectDir)
-            .connect()) {
-
-            BuildEnvironment environment = projectConnection.model(BuildEnvironment.class).get();
-
-            String gradleVersion = environment.getGradle().getGradleVersion();
-            project.setGradleVersion(gradleVersion);
-            project.setGradleVersionUpToDate(versionComparator.compare(gradleVersion,
-                gradleInfo.latestGradleVersion()) >= 0);
-            project.setProjectDir(environment.getBuildIdentifier().getRootDir().getCanonicalFile());
-            project.setGradleVersionSameMajorAsCurrent(
-                versionComparator.isSameMajor(gradleVersion, gradleInfo.latestGradleVersion()));
-        }
-    }
-
-    private void analyzeGit(ProjectMetadata project) throws IOException {
-        FileRepositoryBuilder gitBuilder = new FileRepositoryBuilder()
-            // scan environment GIT_* variables
-            .readEnvironment()
-            // scan up the file system tree
-            .findGitDir(project.getProjectDir());
-        boolean isUnderGitVersionControl = gitBuilder.getGitDir() != null;
-
-        project.setUnderGitVersionControl(isUnderGitVersionControl);
-        if (isUnderGitVersionControl) {
-            try (Repository repository = gitBuilder.build()) {
-                project.setBranch(repository.getBranch());
-
-                // Fist, fetch from remote
-                if (Action.UPGRADE.equals(action) && !dryRun) {
-                    try (Git gitCall = new Git(repository)) {
-                        gitCall.fetch().call();
-                    } catch (InvalidRemoteException e) {
-                        if (e.getCause() instanceof NoRemoteRepositoryException) {
-                            // remote 'origin' not present: that's fine
-                            project.setGitRemoteTracking(false);
-                        } else {
-                            throw new RuntimeException("Unable to run 'git fetch': " + e.getMessage(), e);
-                        }
-                    } catch (NoWorkTreeException | GitAPIException e) {
-                        throw new RuntimeException("Unable to run 'git fetch': " + e.getMessage(), e);
-                    }
-                }
+        if (AnalysisMode.STATIC.equals(analysisMode)
+            && profile.time(Phase.STATIC_ANALYSIS, projectDir, () -> analyzeGradleStatically(projectDir, project))) {
+            return;
+        }
 
-                try (Git gitCall = new Git(repository)) {
-                    Status status = gitCall.status().call();
-                    project.setClean(status.isClean());
-                } catch (NoWorkTreeException | GitAPIException e) {
-                    throw new RuntimeException("Unable to run 'git status': " + e.getMessage(), e);
-                }
+        // Fall back to the Tooling API if the static analysis was inconclusive
+        BuildEnvironment environment = profile.time(Phase.TOOLING_API_MODEL, projectDir,
+            () -> gradleConnections.configure(gradleConnections.connect(projectDir).model(BuildEnvironment.class))
+                .get());
+        project.setProjectDir(environment.getBuildIdentifier().getRootDir().getCanonicalFile());
+        applyGradleVersion(project, GradleVersion.of(environment.getGradle().getGradleVersion()));
+    }
 
-                BranchTrackingStatus trackingStatus = BranchTrackingStatus.of(repository, repository.getBranch());
-                if (trackingStatus == null) {
-                    project.setGitRemoteTracking(false);
-                } else {
-                    project.setGitRemoteTracking(true);
-                    project.setGitAheadCount(trackingStatus.getAheadCount());
-                    project.setGitBehindCount(trackingStatus.getBehindCount());
+    /**
+     * Determine the Gradle version and root directory of the project from its
+     * files alone.
+     *
+     * @return Whether both could be determined and have been applied to the
+     *         project.
+     */
+    private boolean analyzeGradleStatically(File projectDir, ProjectMetadata project) throws IOException {
+        Optional<GradleWrapperProperties> wrapperProperties = GradleWrapperProperties.read(projectDir);
+        if (!wrapperProperties.isPresent()) {
+            return false;
+        }
+        GradleVersion gradleVersion;
+        try {
+            gradleVersion = wrapperProperties.get().getGradleVersion().map(GradleVersion::of).orElse(null);
+        } catch (IllegalArgumentException e) {
+            // Not a release, e.g. a snapshot or custom distribution: ask Gradle
+            return false;
+        }
+        Optional<File> rootDir = resolveRootDirStatically(projectDir);
+        if (gradleVersion == null || !rootDir.isPresent()) {
+            return false;
+        }
+        project.setProjectDir(rootDir.get().getCanonicalFile());
+        applyGradleVersion(project, gradleVersion);
+        return true;
+    }
+
+    /**
+     * Set the project's Gradle version and compare it with the latest one.
+     */
+    void applyGradleVersion(ProjectMetadata project, GradleVersion gradleVersion) {
+        project.setGradleVersion(gradleVersion);
+        project.setGradleVersionUpToDate(gradleVersion.compareTo(gradleInfo.latestGradleVersion()) >= 0);
+        project.setGradleVersionSameMajorAsCurrent(gradleVersion.isSameMajor(gradleInfo.latestGradleVersion()));
+    }
+
+    private boolean isFetchingFromRemote() {
+        return Action.UPGRADE.equals(action) && !dryRun;
+    }
+
+    /**
+     * Find the root directory of the build without asking Gradle, the same way
+     * Gradle would: a settings file in the project directory makes it the root.
+     * A settings file further up the tree might or might not include this
+     * project, in which case only Gradle itself can tell. Package-private for
+     * testing.
+     */
+    static Optional<File> resolveRootDirStatically(File projectDir) throws IOException {
+        if (hasSettingsFile(projectDir)) {
+            return Optional.of(projectDir);
+        }
+        for (File dir = projectDir.getCanonicalFile().getParentFile(); dir != null; dir = dir.getParentFile()) {
+            if (hasSettingsFile(dir)) {
+                // Ambiguous
+                return Optional.empty();
+            }
+        }
+        return Optional.of(projectDir);
+    }
+
+    private static boolean hasSettingsFile(File dir) {
+        return new File(dir, "settings.gradle").isFile() || new File(dir, "settings.gradle.kts").isFile();
+    }
+
+    /**
+     * Analyze the specified Git facets of the project, opening its repository
+     * only once. Package-private for benchmarking.
+     */
+    void analyzeGit(ProjectMetadata project, Set<Facet> facets) throws IOException {
+        analyzeGit(project, facets, isFetchingFromRemote());
+    }
+
+    private void analyzeGit(ProjectMetadata project, Set<Facet> facets, boolean fetch) throws IOException {
+        Optional<Repository> gitRepository = gitRepositories.open(project.getProjectDir());
+
+        project.setUnderGitVersionControl(gitRepository.isPresent());
+        if (gitRepository.isPresent()) {
+            try (Repository repository = gitRepository.get()) {
+                if (facets.contains(Facet.GIT)) {
+                    project.setGitDir(repository.getDirectory().getCanonicalFile());
+                    project.setBranch(repository.getBranch());
+                }
+                if (facets.contains(Facet.GIT_STATUS)) {
+                    profile.time(Phase.GIT_STATUS, project.getProjectDir(),
+                        () -> project.setClean(gitStatusChecker.isClean(repository, project.getProjectDir())));
+                }
+                if (facets.contains(Facet.GIT_TRACKING)) {
+                    profile.time(Phase.GIT_TRACKING, project.getProjectDir(),
+                        () -> analyzeGitTracking(project, repository, fetch));
                 }
             }
         }
     }
+
+    private void analyzeGitTracking(ProjectMetadata project, Repository repository, boolean fetch)
+        throws IOException {
+
+        // Fist, fetch from remote, unless that has already been done
+        if (fetch) {
+            gitFetcher.awaitFetch(repository.getDirectory());
+        }
+
+        BranchTrackingStatus trackingStatus = BranchTrackingStatus.of(repository, repository.getBranch());
+        if (trackingStatus == null) {
+            project.setGitRemoteTracking(false);
+        } else {
+            project.setGitRemoteTracking(true);
+            project.setGitAheadCount(trackingStatus.getAheadCount());
+            project.setGitBehindCount(trackingStatus.getBehindCount());
+        }
+    }
+
+    /**
+     * The possible ways of finding out a project's Gradle version.
+     */
+    public static enum AnalysisMode {
+        /**
+         * Read the version from the wrapper properties file, fall back to the
+         * Tooling API if that isn't conclusive.
+         */
+        STATIC,
+
+        /**
+         * Always ask the Gradle Tooling API.
+         */
+        TOOLING_API;
+    }
 }
@@ -1,21 +1,38 @@
 package io.github.netmikey.gradleversionchecker;
 
 import java.io.File;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 
 /**
  * Holds the metadata collected about a given project directory.
+ * <p>
+ * The metadata is divided into {@link Facet}s that are computed lazily by a
+ * {@link FacetLoader} the first time one of their values is read, and
+ * memoized afterwards. Setters don't trigger any loading.
  */
+@JsonAutoDetect(fieldVisibility = Visibility.ANY, getterVisibility = Visibility.NONE,
+    isGetterVisibility = Visibility.NONE, setterVisibility = Visibility.NONE)
 public class ProjectMetadata {
 
+    private transient FacetLoader loader;
+
+    private EnumSet<Facet> loadedFacets = EnumSet.noneOf(Facet.class);
+
     private File projectDir;
 
     private boolean underGitVersionControl;
 
+    private File gitDir;
+
     private boolean gradleVersionUpToDate;
 
     private boolean gradleVersionSameMajorAsCurrent;
 
-    private String gradleVersion;
+    private GradleVersion gradleVersion;
 
     private String branch;
 
@@ -34,15 +51,113 @@ public class ProjectMetadata {
      * @return <code>true</code> if in sync or no remote tracking set up.
      */
     public boolean isInSyncWithRemote() {
+        load(Facet.GIT_TRACKING);
         return !gitRemoteTracking || (gitAheadCount == 0 && gitBehindCount == 0);
     }
 
+    /**
+     * Set the loader that computes facets on demand.
+     * 
+     * @param loader
+     *            The loader to set.
+     */
+    public void setLoader(FacetLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Copy the values of all facets loaded so far, without the loader.
+     * 
+     * @return The copy.
+     */
+    public synchronized ProjectMetadata copy() {
+        ProjectMetadata copy = new ProjectMetadata();
+        copy.loadedFacets = EnumSet.copyOf(loadedFacets);
+        copy.projectDir = projectDir;
+        copy.underGitVersionControl = underGitVersionControl;
+        copy.gitDir = gitDir;
+        copy.gradleVersionUpToDate = gradleVersionUpToDate;
+        copy.gradleVersionSameMajorAsCurrent = gradleVersionSameMajorAsCurrent;
+        copy.gradleVersion = gradleVersion;
+        copy.branch = branch;
+        copy.clean = clean;
+        copy.gitRemoteTracking = gitRemoteTracking;
+        copy.gitAheadCount = gitAheadCount;
+        copy.gitBehindCount = gitBehindCount;
+        return copy;
+    }
+
+    /**
+     * Copy the values of the facets loaded so far, except for the specified
+     * ones, which the copy loads again when they are read.
+     * 
+     * @param facets
+     *            The facets not to be copied.
+     * @return The copy.
+     */
+    public synchronized ProjectMetadata copyWithout(Set<Facet> facets) {
+        ProjectMetadata copy = copy();
+        copy.loadedFacets.removeAll(facets);
+        return copy;
+    }
+
+    /**
+     * Whether the specified facet has already been loaded.
+     * 
+     * @param facet
+     *            The facet.
+     * @return <code>true</code> if the facet's values are available without
+     *         loading.
+     */
+    public synchronized boolean isLoaded(Facet facet) {
+        return loadedFacets.contains(facet);
+    }
+
+    /**
+     * Load the specified facet unless it has already been loaded.
+     * 
+     * @param facet
+     *            The facet to be loaded.
+     */
+    public void load(Facet facet) {
+        load(EnumSet.of(facet));
+    }
+
+    /**
+     * Load all of the specified facets that haven't been loaded yet, in one
+     * batch.
+     * 
+     * @param facets
+     *            The facets to be loaded.
+     */
+    public synchronized void load(Set<Facet> facets) {
+        if (loader == null) {
+            return;
+        }
+        EnumSet<Facet> missing = EnumSet.noneOf(Facet.class);
+        missing.addAll(facets);
+        missing.removeAll(loadedFacets);
+        if (missing.isEmpty()) {
+            return;
+        }
+        // Mark as loaded first so the loader can read values of the facets
+        // it is loading without recursing
+        loadedFacets.addAll(missing);
+        try {
+            loader.load(this, missing);
+        } catch (RuntimeException e) {
+            loadedFacets.removeAll(missing);
+            throw e;
+        }
+    }
+
     /**
      * Get the projectDir.
      * 
      * @return Returns the projectDir.
      */
     public File getProjectDir() {
+        load(Facet.GRADLE);
         return projectDir;
     }
 
@@ -62,6 +177,7 @@ public class ProjectMetadata {
      * @return Returns the underGitVersionControl.
      */
     public boolean isUnderGitVersionControl() {
+        load(Facet.GIT);
         return underGitVersionControl;
     }
 
@@ -75,12 +191,33 @@ public class ProjectMetadata {
         this.underGitVersionControl = underGitVersionControl;
     }
 
+    /**
+     * Get the gitDir.
+     * 
+     * @return Returns the gitDir.
+     */
+    public File getGitDir() {
+        load(Facet.GIT);
+        return gitDir;
+    }
+
+    /**
+     * Set the gitDir.
+     * 
+     * @param gitDir
+     *            The gitDir to set.
+     */
+    public void setGitDir(File gitDir) {
+        this.gitDir = gitDir;
+    }
+
     /**
      * Get the gradleVersionUpToDate.
      * 
      * @return Returns the gradleVersionUpToDate.
      */
     public boolean isGradleVersionUpToDate() {
+        load(Facet.GRADLE);
         return gradleVersionUpToDate;
     }
 
@@ -99,7 +236,8 @@ public class ProjectMetadata {
      * 
      * @return Returns the gradleVersion.
      */
-    public String getGradleVersion() {
+    public GradleVersion getGradleVersion() {
+        load(Facet.GRADLE);
         return gradleVersion;
     }
 
@@ -109,7 +247,7 @@ public class ProjectMetadata {
      * @param gradleVersion
      *            The gradleVersion to set.
      */
-    public void setGradleVersion(String gradleVersion) {
+    public void setGradleVersion(GradleVersion gradleVersion) {
         this.gradleVersion = gradleVersion;
     }
 
@@ -119,6 +257,7 @@ public class ProjectMetadata {
      * @return Returns the branch.
      */
     public String getBranch() {
+        load(Facet.GIT);
         return branch;
     }
 
@@ -138,6 +277,7 @@ public class ProjectMetadata {
      * @return Returns the clean.
      */
     public boolean isClean() {
+        load(Facet.GIT_STATUS);
         return clean;
     }
 
@@ -157,6 +297,7 @@ public class ProjectMetadata {
      * @return Returns the gradleVersionSameMajorAsCurrent.
      */
     public boolean isGradleVersionSameMajorAsCurrent() {
+        load(Facet.GRADLE);
         return gradleVersionSameMajorAsCurrent;
     }
 
@@ -176,6 +317,7 @@ public class ProjectMetadata {
      * @return Returns the gitRemoteTracking.
      */
     public boolean isGitRemoteTracking() {
+        load(Facet.GIT_TRACKING);
         return gitRemoteTracking;
     }
 
@@ -195,6 +337,7 @@ public class ProjectMetadata {
      * @return Returns the gitAheadCount.
      */
     public int getGitAheadCount() {
+        load(Facet.GIT_TRACKING);
         return gitAheadCount;
     }
 
@@ -214,6 +357,7 @@ public class ProjectMetadata {
      * @return Returns the gitBehindCount.
      */
     public int getGitBehindCount() {
+        load(Facet.GIT_TRACKING);
         return gitBehindCount;
     }
 
@@ -227,4 +371,44 @@ public class ProjectMetadata {
         this.gitBehindCount = gitBehindCount;
     }
 
+    /**
+     * The groups of metadata that are loaded together.
+     */
+    public static enum Facet {
+        /**
+         * The project directory and Gradle version information.
+         */
+        GRADLE,
+
+        /**
+         * Whether the project is under Git version control, and its branch.
+         */
+        GIT,
+
+        /**
+         * Whether the Git working directory is clean.
+         */
+        GIT_STATUS,
+
+        /**
+         * The remote tracking information of the Git branch.
+         */
+        GIT_TRACKING;
+    }
+
+    /**
+     * Computes facets of a project on demand.
+     */
+    @FunctionalInterface
+    public static interface FacetLoader {
+        /**
+         * Compute the specified facets and set their values on the project.
+         * 
+         * @param project
+         *            The project.
+         * @param facets
+         *            The facets to be loaded.
+         */
+        void load(ProjectMetadata project, Set<Facet> facets);
+    }
 }
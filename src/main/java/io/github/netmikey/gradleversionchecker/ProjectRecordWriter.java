@@ -0,0 +1,190 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Streams analyzed projects in a machine-readable format, one record per
+ * project, flushing each record as soon as it has been written.
+ */
+@Component
+public class ProjectRecordWriter {
+
+    @Value("${format:TEXT}")
+    private Format format;
+
+    @Value("${output:}")
+    private String output;
+
+    private final ObjectMapper mapper = new ObjectMapper().configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private Writer writer;
+
+    /**
+     * Whether projects are written as machine-readable records rather than as
+     * human-readable text.
+     *
+     * @return Returns <code>true</code> unless the format is text.
+     */
+    public boolean isMachineReadable() {
+        return !Format.TEXT.equals(format);
+    }
+
+    /**
+     * Whether the records are written to the standard output stream, in which
+     * case it shouldn't be used for anything else.
+     *
+     * @return Returns <code>true</code> if machine-readable records are written
+     *         to the standard output stream.
+     */
+    public boolean isWritingToStandardOutput() {
+        return isMachineReadable() && output.isEmpty();
+    }
+
+    /**
+     * Write the specified project as one record.
+     *
+     * @param project
+     *            The project to be written.
+     */
+    public void write(ProjectMetadata project) {
+        write(toRecord(project));
+    }
+
+    /**
+     * Write the specified change of a project as one record, with the type of
+     * the change as an additional first field named <code>event</code>.
+     *
+     * @param event
+     *            The type of the change, e.g. <code>ADDED</code>.
+     * @param project
+     *            The changed project.
+     */
+    public void write(String event, ProjectMetadata project) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("event", event);
+        record.putAll(toRecord(project));
+        write(record);
+    }
+
+    private synchronized void write(Map<String, Object> record) {
+        try {
+            if (writer == null) {
+                writer = open();
+                if (Format.CSV.equals(format)) {
+                    writeCsvLine(new ArrayList<>(record.keySet()));
+                }
+            }
+            if (Format.CSV.equals(format)) {
+                writeCsvLine(new ArrayList<>(record.values()));
+            } else {
+                mapper.writeValue(writer, record);
+                writer.write('\n');
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write the output: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Close the output file, if any.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            if (output.isEmpty()) {
+                writer.flush();
+            } else {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write the output: " + e.getMessage(), e);
+        } finally {
+            writer = null;
+        }
+    }
+
+    private Writer open() throws IOException {
+        if (output.isEmpty()) {
+            return new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        }
+        File outputFile = new File(output).getAbsoluteFile();
+        outputFile.getParentFile().mkdirs();
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Convert the specified project to a record.
+     *
+     * @param project
+     *            The project.
+     * @return The record's fields by name, in a stable order.
+     */
+    public Map<String, Object> toRecord(ProjectMetadata project) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("projectDir", project.getProjectDir().getPath());
+        record.put("gradleVersion", project.getGradleVersion() == null ? null : project.getGradleVersion().toString());
+        record.put("gradleVersionUpToDate", project.isGradleVersionUpToDate());
+        record.put("gradleVersionSameMajorAsCurrent", project.isGradleVersionSameMajorAsCurrent());
+        record.put("underGitVersionControl", project.isUnderGitVersionControl());
+        record.put("gitDir", project.getGitDir() == null ? null : project.getGitDir().getPath());
+        record.put("branch", project.getBranch());
+        return record;
+    }
+
+    private void writeCsvLine(List<Object> values) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (Object value : values) {
+            if (line.length() > 0) {
+                line.append(',');
+            }
+            String text = value == null ? "" : value.toString();
+            if (text.matches("(?s).*[,\"\r\n].*")) {
+                text = '"' + text.replace("\"", "\"\"") + '"';
+            }
+            line.append(text);
+        }
+        writer.write(line.append("\r\n").toString());
+    }
+
+    /**
+     * The possible output formats.
+     */
+    public static enum Format {
+        /**
+         * Human-readable text on the console.
+         */
+        TEXT,
+
+        /**
+         * One JSON object per line (JSON Lines).
+         */
+        JSONL,
+
+        /**
+         * Comma-separated values with a header line (RFC 4180).
+         */
+        CSV;
+    }
+}
@@ -0,0 +1,181 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decides which subtrees a {@link DirectoryWalker} doesn't descend into.
+ */
+public class PruneRules {
+
+    /**
+     * The names of directories that are excluded by default: version control
+     * metadata, IDE and tool caches, dependency and build output directories.
+     */
+    public static final List<String> DEFAULT_EXCLUDES = Collections.unmodifiableList(Arrays.asList(".git", ".svn",
+        ".hg", ".gradle", ".idea", "node_modules", "bower_components", "build", "out", "target"));
+
+    /**
+     * Rules that don't prune anything but cycles.
+     */
+    public static final PruneRules NONE = new PruneRules(false, Collections.emptyList(), -1, false);
+
+    private final Set<String> defaultExcludes;
+
+    private final List<PathMatcher> pathExcludes = new ArrayList<>();
+
+    private final List<PathMatcher> nameExcludes = new ArrayList<>();
+
+    private final int maxDepth;
+
+    private final boolean gitignore;
+
+    /**
+     * Constructor.
+     *
+     * @param defaultExcludes
+     *            Whether the {@link #DEFAULT_EXCLUDES} should be pruned.
+     * @param excludes
+     *            Glob patterns of directories to be pruned. Patterns containing
+     *            a slash are matched against the path relative to the scanned
+     *            directory, all others against the directory name.
+     * @param maxDepth
+     *            The maximum depth below the scanned directory to descend to,
+     *            or a negative number for no limit.
+     * @param gitignore
+     *            Whether directories ignored by a <code>.gitignore</code> file
+     *            should be pruned.
+     */
+    public PruneRules(boolean defaultExcludes, List<String> excludes, int maxDepth, boolean gitignore) {
+        this.defaultExcludes = defaultExcludes ? new HashSet<>(DEFAULT_EXCLUDES) : Collections.emptySet();
+        for (String exclude : excludes) {
+            String pattern = exclude.trim();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            (pattern.contains("/") ? pathExcludes : nameExcludes).add(matcher);
+        }
+        this.maxDepth = maxDepth;
+        this.gitignore = gitignore;
+    }
+
+    /**
+     * Check whether the specified directory is to be pruned, except for
+     * cycles and <code>.gitignore</code> files, which are up to the walker.
+     *
+     * @param dir
+     *            The directory.
+     * @param relativeDir
+     *            The directory relative to the scanned directory.
+     * @param depth
+     *            The depth of the directory below the scanned directory.
+     * @return The reason for pruning the directory, or <code>null</code> if
+     *         it is to be walked.
+     */
+    public Reason check(Path dir, Path relativeDir, int depth) {
+        return check(relativeDir, depth, () -> Files.isRegularFile(dir.resolve("build.gradle")));
+    }
+
+    /**
+     * Check whether the directory at the specified relative path is to be
+     * pruned, without accessing the file system, e.g. for a directory in a Git
+     * tree.
+     *
+     * @param relativeDir
+     *            The directory relative to the scanned directory.
+     * @param depth
+     *            The depth of the directory below the scanned directory.
+     * @param isBuildDir
+     *            Tells whether the directory contains a
+     *            <code>build.gradle</code> file, only asked if necessary.
+     * @return The reason for pruning the directory, or <code>null</code> if
+     *         it is to be walked.
+     */
+    public Reason check(Path relativeDir, int depth, BooleanSupplier isBuildDir) {
+        if (maxDepth >= 0 && depth > maxDepth) {
+            return Reason.MAX_DEPTH;
+        }
+        Path name = relativeDir.getFileName();
+        if (name != null && defaultExcludes.contains(name.toString())
+            // Never miss a build that happens to have one of these names
+            && !isBuildDir.getAsBoolean()) {
+            return Reason.DEFAULT_EXCLUDE;
+        }
+        for (PathMatcher matcher : nameExcludes) {
+            if (name != null && matcher.matches(name)) {
+                return Reason.EXCLUDE;
+            }
+        }
+        for (PathMatcher matcher : pathExcludes) {
+            if (matcher.matches(relativeDir)) {
+                return Reason.EXCLUDE;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether directories ignored by a <code>.gitignore</code> file should be
+     * pruned.
+     *
+     * @return Returns the gitignore flag.
+     */
+    public boolean isGitignore() {
+        return gitignore;
+    }
+
+    /**
+     * The reasons for pruning a subtree.
+     */
+    public static enum Reason {
+        /**
+         * One of the {@link PruneRules#DEFAULT_EXCLUDES}.
+         */
+        DEFAULT_EXCLUDE("default exclude"),
+
+        /**
+         * Matched by an exclude pattern.
+         */
+        EXCLUDE("exclude pattern"),
+
+        /**
+         * Below the maximum depth.
+         */
+        MAX_DEPTH("max depth"),
+
+        /**
+         * Ignored by a <code>.gitignore</code> file.
+         */
+        GITIGNORE(".gitignore"),
+
+        /**
+         * A symbolic link back to one of its own parent directories.
+         */
+        CYCLE("symlink cycle");
+
+        private final String description;
+
+        private Reason(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Get the description.
+         *
+         * @return Returns the description.
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.github.netmikey.gradleversionchecker.Inventory.Change;
+import io.github.netmikey.gradleversionchecker.InventoryStore.Run;
+
+/**
+ * Encapsulates the logic of the query action: answering questions from the
+ * {@link InventoryStore} without scanning.
+ */
+@Component
+public class QueryAction {
+
+    @Autowired
+    private ConsoleWriter out;
+
+    @Autowired
+    private InventoryStore store;
+
+    @Autowired
+    private ListAction list;
+
+    @Autowired
+    private ProjectRecordWriter records;
+
+    @Value("${query:PROJECTS}")
+    private Query query;
+
+    @Value("${query-major:}")
+    private String major;
+
+    @Value("${query-version:}")
+    private String version;
+
+    @Value("${query-run:}")
+    private String run;
+
+    /**
+     * Answer the configured query for the projects below the specified
+     * directory.
+     * 
+     * @param dir
+     *            The directory.
+     */
+    public void run(File dir) {
+        switch (query) {
+            case PROJECTS:
+                List<ProjectMetadata> projects = store.findProjects(dir,
+                    major.isEmpty() ? null : Integer.valueOf(major), version.isEmpty() ? null : version);
+                projects.forEach(list);
+                records.close();
+                out.println(projects.size() + " Gradle project" + (projects.size() > 1 ? "s" : "") + " found");
+                break;
+            case CHANGES:
+                List<Change> changes = store.findChanges(dir, run.isEmpty() ? null : Long.valueOf(run));
+                changes.forEach(list::acceptChange);
+                records.close();
+                out.println(changes.size() + " change" + (changes.size() != 1 ? "s" : "") + " found");
+                break;
+            case RUNS:
+                for (Run recordedRun : store.findRuns()) {
+                    out.println(String.format("#%-5d %s  %-7s %5s projects  %s", recordedRun.getId(),
+                        recordedRun.getStartedAt(), recordedRun.getAction(),
+                        recordedRun.getFinishedAt() == null ? "?" : recordedRun.getProjectCount(),
+                        recordedRun.getBaseDir()));
+                }
+                break;
+        }
+    }
+
+    /**
+     * The possible queries.
+     */
+    public static enum Query {
+        /**
+         * The projects as of their latest run, optionally only those on a
+         * specific Gradle major version or version.
+         */
+        PROJECTS,
+
+        /**
+         * The projects a run found added, changed or removed compared to the
+         * run before, by default the latest run.
+         */
+        CHANGES,
+
+        /**
+         * The recorded runs.
+         */
+        RUNS;
+    }
+}
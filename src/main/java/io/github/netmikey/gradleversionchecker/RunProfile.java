@@ -0,0 +1,359 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Records how much time a run spends in each of its phases, in total and per
+ * project, and reports it at the end of the run.
+ */
+@Component
+public class RunProfile {
+
+    private static final String TIMER_NAME = "gradle-version-tool.phase";
+
+    private static final String COUNTER_NAME = "gradle-version-tool.count";
+
+    private static final double[] PERCENTILES = { 0.5, 0.95, 0.99 };
+
+    @Autowired
+    private ConsoleWriter out;
+
+    @Value("${profile:false}")
+    private boolean enabled;
+
+    @Value("${profile-output:}")
+    private String output;
+
+    @Value("${profile-slowest:5}")
+    private int slowest;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private final Map<Phase, Map<String, LongAdder>> projectTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Whether the run is being profiled.
+     *
+     * @return Returns <code>true</code> if a profile is to be reported.
+     */
+    public boolean isEnabled() {
+        return enabled || !output.isEmpty();
+    }
+
+    /**
+     * Run a phase for the specified project and record its duration, whether
+     * it succeeds or not.
+     *
+     * @param <T>
+     *            The type of the phase's result.
+     * @param <E>
+     *            The type of exception the phase might throw.
+     * @param phase
+     *            The phase.
+     * @param project
+     *            The project directory the phase is working on, or the
+     *            directory being scanned.
+     * @param work
+     *            The work of the phase.
+     * @return The result of the work.
+     * @throws E
+     *             If the work fails.
+     */
+    public <T, E extends Exception> T time(Phase phase, File project, Work<T, E> work) throws E {
+        if (!isEnabled()) {
+            return work.call();
+        }
+        long start = System.nanoTime();
+        try {
+            return work.call();
+        } finally {
+            record(phase, project.getPath(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Run a phase without a result for the specified project and record its
+     * duration, whether it succeeds or not.
+     *
+     * @param <E>
+     *            The type of exception the phase might throw.
+     * @param phase
+     *            The phase.
+     * @param project
+     *            The project directory the phase is working on, or the
+     *            directory being scanned.
+     * @param work
+     *            The work of the phase.
+     * @throws E
+     *             If the work fails.
+     */
+    public <E extends Exception> void time(Phase phase, File project, VoidWork<E> work) throws E {
+        time(phase, project, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Count an event.
+     *
+     * @param name
+     *            The name of the event, e.g. <code>upgrade.failed</code>.
+     */
+    public void count(String name) {
+        if (isEnabled()) {
+            registry.counter(COUNTER_NAME, "event", name).increment();
+        }
+    }
+
+    /**
+     * Print the profile, and write it as JSON if requested.
+     */
+    public void report() {
+        if (!isEnabled()) {
+            return;
+        }
+        Map<String, Object> profile = profile();
+        if (enabled) {
+            print(profile);
+        }
+        if (!output.isEmpty()) {
+            File outputFile = new File(output).getAbsoluteFile();
+            outputFile.getParentFile().mkdirs();
+            try {
+                new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(outputFile, profile);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to write the profile: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void record(Phase phase, String project, long nanos) {
+        timer(phase).record(nanos, TimeUnit.NANOSECONDS);
+        projectTimes.computeIfAbsent(phase, p -> new ConcurrentHashMap<>())
+            .computeIfAbsent(project, p -> new LongAdder())
+            .add(nanos);
+    }
+
+    private Timer timer(Phase phase) {
+        return Timer.builder(TIMER_NAME)
+            .tag("phase", phase.name())
+            .publishPercentiles(PERCENTILES)
+            // Percentiles and maximum should cover the whole run
+            .distributionStatisticExpiry(Duration.ofDays(1))
+            .distributionStatisticBufferLength(1)
+            .register(registry);
+    }
+
+    private Map<String, Object> profile() {
+        Map<String, Object> phases = new LinkedHashMap<>();
+        Map<Phase, Map<String, LongAdder>> recordedPhases = new EnumMap<>(Phase.class);
+        recordedPhases.putAll(projectTimes);
+        recordedPhases.forEach((phase, times) -> {
+            Timer timer = timer(phase);
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("description", phase.getDescription());
+            stats.put("count", timer.count());
+            stats.put("totalMillis", Math.round(timer.totalTime(TimeUnit.MILLISECONDS)));
+            stats.put("meanMillis", Math.round(timer.mean(TimeUnit.MILLISECONDS)));
+            for (ValueAtPercentile percentile : timer.takeSnapshot().percentileValues()) {
+                stats.put("p" + Math.round(percentile.percentile() * 100) + "Millis",
+                    Math.round(percentile.value(TimeUnit.MILLISECONDS)));
+            }
+            stats.put("maxMillis", Math.round(timer.max(TimeUnit.MILLISECONDS)));
+
+            List<Map.Entry<String, LongAdder>> sorted = new ArrayList<>(times.entrySet());
+            sorted.sort(Comparator.comparing((Map.Entry<String, LongAdder> entry) -> entry.getValue().sum())
+                .reversed());
+            Map<String, Long> slowestProjects = new LinkedHashMap<>();
+            for (Map.Entry<String, LongAdder> entry : sorted.subList(0, Math.min(slowest, sorted.size()))) {
+                slowestProjects.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().sum()));
+            }
+            stats.put("slowestMillis", slowestProjects);
+            phases.put(phase.name(), stats);
+        });
+
+        Map<String, Object> counts = new LinkedHashMap<>();
+        for (Counter counter : registry.find(COUNTER_NAME).counters()) {
+            counts.put(counter.getId().getTag("event"), Math.round(counter.count()));
+        }
+
+        Map<String, Object> profile = new LinkedHashMap<>();
+        profile.put("phases", phases);
+        profile.put("counts", counts);
+        return profile;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void print(Map<String, Object> profile) {
+        out.println("Run profile:");
+        ((Map<String, Map<String, Object>>) profile.get("phases")).forEach((phase, stats) -> {
+            StringBuilder line = new StringBuilder(String.format("    %-28s", stats.get("description")));
+            stats.forEach((name, value) -> {
+                if (value instanceof Long) {
+                    line.append(' ').append(name.replace("Millis", "")).append('=').append(value)
+                        .append(name.endsWith("Millis") ? "ms" : "");
+                }
+            });
+            out.println(line);
+            ((Map<String, Long>) stats.get("slowestMillis"))
+                .forEach((project, millis) -> out.println(String.format("        %8dms %s", millis, project)));
+        });
+        ((Map<String, Object>) profile.get("counts"))
+            .forEach((name, count) -> out.println("    " + name + ": " + count));
+        out.println("");
+    }
+
+    /**
+     * The work of a phase.
+     *
+     * @param <T>
+     *            The type of the result.
+     * @param <E>
+     *            The type of exception the work might throw.
+     */
+    @FunctionalInterface
+    public static interface Work<T, E extends Exception> {
+        /**
+         * Do the work.
+         *
+         * @return The result.
+         * @throws E
+         *             If the work fails.
+         */
+        T call() throws E;
+    }
+
+    /**
+     * The work of a phase without a result.
+     *
+     * @param <E>
+     *            The type of exception the work might throw.
+     */
+    @FunctionalInterface
+    public static interface VoidWork<E extends Exception> {
+        /**
+         * Do the work.
+         *
+         * @throws E
+         *             If the work fails.
+         */
+        void run() throws E;
+    }
+
+    /**
+     * The phases of a run.
+     */
+    public static enum Phase {
+        /**
+         * Walking the file system to find Gradle projects.
+         */
+        SCAN("file system scan"),
+
+        /**
+         * Computing a project's scan cache fingerprint.
+         */
+        FINGERPRINT("scan cache fingerprint"),
+
+        /**
+         * Reading the wrapper properties and settings files.
+         */
+        STATIC_ANALYSIS("static analysis"),
+
+        /**
+         * Fetching the build environment model through the Tooling API.
+         */
+        TOOLING_API_MODEL("Tooling API model"),
+
+        /**
+         * Checking whether the Git working directory is clean.
+         */
+        GIT_STATUS("git status"),
+
+        /**
+         * Fetching a Git repository.
+         */
+        GIT_FETCH("git fetch"),
+
+        /**
+         * Reading the Git remote tracking status, including waiting for the
+         * fetch.
+         */
+        GIT_TRACKING("git tracking status"),
+
+        /**
+         * Building the project before the upgrade.
+         */
+        PRE_UPGRADE_BUILD("pre-upgrade build"),
+
+        /**
+         * Upgrading the Gradle wrapper.
+         */
+        WRAPPER_UPGRADE("wrapper upgrade"),
+
+        /**
+         * Configuring the project after the upgrade, without running any
+         * tasks.
+         */
+        POST_UPGRADE_CONFIGURATION("post-upgrade configuration"),
+
+        /**
+         * Compiling the project after the upgrade.
+         */
+        POST_UPGRADE_COMPILATION("post-upgrade compilation"),
+
+        /**
+         * Building the project after the upgrade.
+         */
+        POST_UPGRADE_BUILD("post-upgrade build"),
+
+        /**
+         * Committing the upgraded wrapper.
+         */
+        COMMIT("git commit"),
+
+        /**
+         * Pushing the commit.
+         */
+        PUSH("git push");
+
+        private final String description;
+
+        private Phase(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Get the description.
+         *
+         * @return Returns the description.
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+}
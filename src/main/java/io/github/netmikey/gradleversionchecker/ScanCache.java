@@ -0,0 +1,376 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.netmikey.gradleversionchecker.ProjectMetadata.Facet;
+
+/**
+ * Persistent cache of analysis results across runs. Entries are keyed by the
+ * canonical project directory and are only reused as long as the project's
+ * {@link Fingerprint} didn't change. The working tree status and the remote
+ * tracking information can change without the fingerprint noticing, so they
+ * are never cached.
+ */
+@Component
+public class ScanCache {
+
+    private static final String CACHE_FILE_NAME = "scan-cache.json";
+
+    private static final Set<Facet> UNCACHED_FACETS = EnumSet.of(Facet.GIT_STATUS, Facet.GIT_TRACKING);
+
+    @Autowired
+    private GitRepositories gitRepositories;
+
+    @Value("${cache:true}")
+    private boolean enabled;
+
+    @Value("${cache-invalidate:false}")
+    private boolean invalidate;
+
+    @Value("${cache-dir:${user.home}/.gradle-version-tool}")
+    private File cacheDir;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private Map<String, Entry> entries;
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Whether the cache is enabled.
+     *
+     * @return Returns <code>true</code> unless the cache has been bypassed.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Look up the cached metadata of the specified project directory.
+     *
+     * @param projectDir
+     *            The project's directory.
+     * @param fingerprint
+     *            The project's current fingerprint.
+     * @return A copy of the cached metadata, which is the caller's to modify,
+     *         if there is an entry with a matching fingerprint.
+     */
+    public Optional<ProjectMetadata> lookup(File projectDir, Fingerprint fingerprint) {
+        Entry entry = entries().get(key(projectDir));
+        if (entry != null && fingerprint.equals(entry.getFingerprint())) {
+            hits.incrementAndGet();
+            return Optional.of(entry.getProject().copy());
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * Store the metadata of the specified project directory.
+     *
+     * @param projectDir
+     *            The project's directory.
+     * @param fingerprint
+     *            The project's fingerprint at the time it has been analyzed.
+     * @param project
+     *            The analyzed metadata, of which a copy is stored without
+     *            the Git status and tracking facets: later changes need to
+     *            be stored again.
+     */
+    public void store(File projectDir, Fingerprint fingerprint, ProjectMetadata project) {
+        Entry entry = new Entry();
+        entry.setFingerprint(fingerprint);
+        entry.setProject(project.copyWithout(UNCACHED_FACETS));
+        entries().put(key(projectDir), entry);
+    }
+
+    /**
+     * Compute the current fingerprint of the specified project directory.
+     *
+     * @param projectDir
+     *            The project's directory.
+     * @return The fingerprint.
+     * @throws IOException
+     *             If the project's Git repository cannot be read.
+     */
+    public Fingerprint fingerprint(File projectDir) throws IOException {
+        Fingerprint fingerprint = new Fingerprint();
+        File wrapperProperties = new File(projectDir, GradleWrapperProperties.PATH);
+        fingerprint.setWrapperLastModified(wrapperProperties.lastModified());
+        fingerprint.setWrapperLength(wrapperProperties.length());
+
+        Optional<Repository> gitRepository = gitRepositories.open(projectDir);
+        if (gitRepository.isPresent()) {
+            try (Repository repository = gitRepository.get()) {
+                Ref head = repository.exactRef(Constants.HEAD);
+                if (head != null) {
+                    fingerprint.setGitHead(head.getTarget().getName() + " " + ObjectId.toString(head.getObjectId()));
+                }
+                if (!repository.isBare()) {
+                    fingerprint.setGitIndexLastModified(repository.getIndexFile().lastModified());
+                }
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Write the cache back to disk.
+     */
+    public synchronized void save() {
+        if (!enabled || entries == null) {
+            return;
+        }
+        try {
+            cacheDir.mkdirs();
+            mapper.writeValue(new File(cacheDir, CACHE_FILE_NAME), entries);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write the scan cache: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the number of cache hits so far.
+     *
+     * @return Returns the hits.
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of cache misses so far.
+     *
+     * @return Returns the misses.
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    private synchronized Map<String, Entry> entries() {
+        if (entries == null) {
+            entries = new ConcurrentHashMap<>();
+            File cacheFile = new File(cacheDir, CACHE_FILE_NAME);
+            if (!invalidate && cacheFile.isFile()) {
+                try {
+                    entries.putAll(mapper.readValue(cacheFile, new TypeReference<Map<String, Entry>>() {
+                        // Type capture
+                    }));
+                } catch (IOException e) {
+                    // A broken cache is as good as an empty cache
+                }
+            }
+        }
+        return entries;
+    }
+
+    private String key(File projectDir) {
+        try {
+            return projectDir.getCanonicalPath();
+        } catch (IOException e) {
+            return projectDir.getAbsolutePath();
+        }
+    }
+
+    /**
+     * A cached project along with the fingerprint it has been analyzed with.
+     */
+    public static class Entry {
+
+        private Fingerprint fingerprint;
+
+        private ProjectMetadata project;
+
+        /**
+         * Get the fingerprint.
+         *
+         * @return Returns the fingerprint.
+         */
+        public Fingerprint getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * Set the fingerprint.
+         *
+         * @param fingerprint
+         *            The fingerprint to set.
+         */
+        public void setFingerprint(Fingerprint fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * Get the project.
+         *
+         * @return Returns the project.
+         */
+        public ProjectMetadata getProject() {
+            return project;
+        }
+
+        /**
+         * Set the project.
+         *
+         * @param project
+         *            The project to set.
+         */
+        public void setProject(ProjectMetadata project) {
+            this.project = project;
+        }
+    }
+
+    /**
+     * The state of the files an analysis result depends on.
+     */
+    public static class Fingerprint {
+
+        private long wrapperLastModified;
+
+        private long wrapperLength;
+
+        private String gitHead;
+
+        private long gitIndexLastModified;
+
+        private String gitStatus;
+
+        /**
+         * Get the wrapperLastModified.
+         *
+         * @return Returns the wrapperLastModified.
+         */
+        public long getWrapperLastModified() {
+            return wrapperLastModified;
+        }
+
+        /**
+         * Set the wrapperLastModified.
+         *
+         * @param wrapperLastModified
+         *            The wrapperLastModified to set.
+         */
+        public void setWrapperLastModified(long wrapperLastModified) {
+            this.wrapperLastModified = wrapperLastModified;
+        }
+
+        /**
+         * Get the wrapperLength.
+         *
+         * @return Returns the wrapperLength.
+         */
+        public long getWrapperLength() {
+            return wrapperLength;
+        }
+
+        /**
+         * Set the wrapperLength.
+         *
+         * @param wrapperLength
+         *            The wrapperLength to set.
+         */
+        public void setWrapperLength(long wrapperLength) {
+            this.wrapperLength = wrapperLength;
+        }
+
+        /**
+         * Get the gitHead.
+         *
+         * @return Returns the gitHead.
+         */
+        public String getGitHead() {
+            return gitHead;
+        }
+
+        /**
+         * Set the gitHead.
+         *
+         * @param gitHead
+         *            The gitHead to set.
+         */
+        public void setGitHead(String gitHead) {
+            this.gitHead = gitHead;
+        }
+
+        /**
+         * Get the gitIndexLastModified.
+         *
+         * @return Returns the gitIndexLastModified.
+         */
+        public long getGitIndexLastModified() {
+            return gitIndexLastModified;
+        }
+
+        /**
+         * Set the gitIndexLastModified.
+         *
+         * @param gitIndexLastModified
+         *            The gitIndexLastModified to set.
+         */
+        public void setGitIndexLastModified(long gitIndexLastModified) {
+            this.gitIndexLastModified = gitIndexLastModified;
+        }
+
+        /**
+         * Get the gitStatus.
+         *
+         * @return Returns the gitStatus.
+         */
+        public String getGitStatus() {
+            return gitStatus;
+        }
+
+        /**
+         * Set the gitStatus.
+         *
+         * @param gitStatus
+         *            The strategy the working directory has been checked with,
+         *            <code>null</code> if it hasn't been checked.
+         */
+        public void setGitStatus(String gitStatus) {
+            this.gitStatus = gitStatus;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint other = (Fingerprint) obj;
+            return wrapperLastModified == other.wrapperLastModified && wrapperLength == other.wrapperLength
+                && Objects.equals(gitHead, other.gitHead) && gitIndexLastModified == other.gitIndexLastModified
+                && Objects.equals(gitStatus, other.gitStatus);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(wrapperLastModified, wrapperLength, gitHead, gitIndexLastModified, gitStatus);
+        }
+    }
+}
@@ -1,11 +1,22 @@
 package io.github.netmikey.gradleversionchecker;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import io.github.netmikey.gradleversionchecker.ProjectMetadata.Facet;
+import io.github.netmikey.gradleversionchecker.PruneRules.Reason;
+import io.github.netmikey.gradleversionchecker.RunProfile.Phase;
+
 /**
  * Scans directories for Gradle projects.
  */
@@ -18,6 +29,24 @@ public class Scanner {
     @Autowired
     private ProjectAnalyzer analyzer;
 
+    @Autowired
+    private RunProfile profile;
+
+    @Value("${scan-parallelism:0}")
+    private int scanParallelism;
+
+    @Value("${default-excludes:true}")
+    private boolean defaultExcludes;
+
+    @Value("${exclude:}")
+    private String[] excludes;
+
+    @Value("${max-depth:-1}")
+    private int maxDepth;
+
+    @Value("${gitignore:false}")
+    private boolean gitignore;
+
     /**
      * Scan from the specified baseDir.
      * 
@@ -28,33 +57,105 @@ public class Scanner {
      *            project directory.
      */
     public void scan(File baseDir, Consumer<ProjectMetadata> callback) {
+        scan(baseDir, EnumSet.noneOf(Facet.class), callback);
+    }
+
+    /**
+     * Scan from the specified baseDir.
+     * 
+     * @param baseDir
+     *            The directory to start with.
+     * @param facets
+     *            The facets of each project to be loaded before it is passed
+     *            to the callback. All other facets are loaded lazily.
+     * @param callback
+     *            A callback that will get called for any found and analyzed
+     *            project directory.
+     */
+    public void scan(File baseDir, Set<Facet> facets, Consumer<ProjectMetadata> callback) {
+        scan(baseDir, facets, dir -> {
+            // Nothing else to do
+        }, callback);
+    }
+
+    /**
+     * Scan from the specified baseDir.
+     * 
+     * @param baseDir
+     *            The directory to start with.
+     * @param facets
+     *            The facets of each project to be loaded before it is passed
+     *            to the callback. All other facets are loaded lazily.
+     * @param visitListener
+     *            A listener that will get called for every directory visited,
+     *            including the project directories. Might be called
+     *            concurrently from multiple threads.
+     * @param callback
+     *            A callback that will get called for any found and analyzed
+     *            project directory.
+     */
+    public void scan(File baseDir, Set<Facet> facets, Consumer<Path> visitListener,
+        Consumer<ProjectMetadata> callback) {
+
         out.println("Scanning for Gradle projects in " + baseDir.getAbsolutePath() + " ...\n");
-        scanChildren(baseDir, callback);
+        scanChildren(baseDir, facets, visitListener, callback);
     }
 
-    private void scanChildren(File baseDir, Consumer<ProjectMetadata> callback) {
-        out.printVolatile(">> Scanning: " + baseDir.getAbsolutePath());
+    /**
+     * Check whether the specified directory would be pruned by a scan of the
+     * specified baseDir. Only the rules that don't depend on the directory's
+     * parents are checked, i.e. <code>.gitignore</code> files are not.
+     * 
+     * @param baseDir
+     *            The scanned directory.
+     * @param dir
+     *            A directory below the scanned directory.
+     * @return <code>true</code> if the directory would be pruned.
+     */
+    public boolean isPruned(File baseDir, File dir) {
+        Path relativeDir = baseDir.toPath().relativize(dir.toPath());
+        return pruneRules().check(dir.toPath(), relativeDir, relativeDir.getNameCount()) != null;
+    }
 
-        if (!baseDir.isDirectory()) {
-            return;
-        }
+    private PruneRules pruneRules() {
+        return new PruneRules(defaultExcludes, Arrays.asList(excludes), maxDepth, gitignore);
+    }
 
-        File buildFile = new File(baseDir, "build.gradle");
+    private void scanChildren(File baseDir, Set<Facet> facets, Consumer<Path> visitListener,
+        Consumer<ProjectMetadata> callback) {
 
-        if (buildFile.isFile()) {
-            // This is a gradle build directory
-            // -> Analyze and send it to the callback, no recursion
+        int parallelism = scanParallelism > 0 ? scanParallelism : Runtime.getRuntime().availableProcessors();
+        DirectoryWalker walker = new DirectoryWalker(parallelism, pruneRules(), dir -> {
+            visitListener.accept(dir);
+            out.countDirectoryScanned();
+            out.printVolatile(">> Scanning: " + dir.toAbsolutePath());
+        });
 
-            analyzer.analyzeProjectDir(baseDir).ifPresent(callback);
-        } else {
-            // This is not a gradle build directory
-            // -> continue search recursively
+        List<File> buildDirs = profile.time(Phase.SCAN, baseDir, () -> walker.findBuildDirs(baseDir));
+        reportPruned(walker.getPrunedCounts());
+        analyzer.prepare(buildDirs);
 
-            File[] subDirs = baseDir.listFiles(File::isDirectory);
+        // Analyze the build directories in path order to keep the output stable
+        for (File buildDir : buildDirs) {
+            out.printVolatile(">> Analyzing: " + buildDir.getAbsolutePath());
+            analyzer.analyzeProjectDir(buildDir, facets).ifPresent(project -> {
+                out.countProjectFound();
+                profile.count("projects.found");
+                callback.accept(project);
+            });
+        }
+    }
 
-            for (File subDir : subDirs) {
-                scanChildren(subDir, callback);
-            }
+    private void reportPruned(Map<Reason, Long> prunedCounts) {
+        if (prunedCounts.isEmpty()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder(">> Pruned subtrees:");
+        String separator = " ";
+        for (Map.Entry<Reason, Long> count : prunedCounts.entrySet()) {
+            message.append(separator).append(count.getValue()).append(" by ").append(count.getKey().getDescription());
+            separator = ", ";
         }
+        out.println(message.append("\n"));
     }
 }
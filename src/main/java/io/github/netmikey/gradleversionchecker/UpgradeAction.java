@@ -5,20 +5,40 @@ import static org.fusesource.jansi.Ansi.*;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+import javax.annotation.PreDestroy;
+
+import org.eclipse.jgit.api.AddCommand;
+import org.eclipse.jgit.api.CommitCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
-import org.gradle.tooling.GradleConnector;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.gradle.tooling.BuildLauncher;
 import org.gradle.tooling.ProjectConnection;
 import org.gradle.tooling.events.OperationType;
 import org.gradle.tooling.events.ProgressEvent;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StreamUtils;
+
+import io.github.netmikey.gradleversionchecker.ProjectMetadata.Facet;
+import io.github.netmikey.gradleversionchecker.RunProfile.Phase;
 
 /**
  * Encapsulates the logic of the upgrade action.
@@ -26,12 +46,38 @@ import org.springframework.util.StreamUtils;
 @Component
 public class UpgradeAction implements Consumer<ProjectMetadata> {
 
+    private static final List<String> WRAPPER_FILES = Arrays.asList("gradlew", "gradlew.bat", "gradle/wrapper");
+
     @Autowired
     private ConsoleWriter out;
 
     @Autowired
     private GradleInfo gradleInfo;
 
+    @Autowired
+    private GradleConnections gradleConnections;
+
+    @Autowired
+    private ProjectAnalyzer analyzer;
+
+    @Autowired
+    private WrapperUpgrader wrapperUpgrader;
+
+    @Autowired
+    private GitRepositories gitRepositories;
+
+    @Autowired
+    private RunProfile profile;
+
+    @Autowired
+    private VerifiedBuilds verifiedBuilds;
+
+    @Autowired
+    private GitStatusChecker gitStatusChecker;
+
+    @Autowired
+    private VerificationProfile verificationProfile;
+
     @Value("${major-upgrades:false}")
     private boolean majorUpgrades;
 
@@ -41,16 +87,159 @@ public class UpgradeAction implements Consumer<ProjectMetadata> {
     @Value("${check-tasks:clean,build,assemble}")
     private String[] checkTasks;
 
+    @Value("${verify-configuration:true}")
+    private boolean verifyConfiguration;
+
+    @Value("${verify-compile-tasks:}")
+    private String[] compileTasks;
+
     @Value("${commit:true}")
     private boolean commit;
 
     @Value("${push:${commit:true}}")
     private boolean push;
 
-    private boolean windows = System.getProperty("os.name").toLowerCase().indexOf("win") >= 0;
+    @Value("${parallelism:1}")
+    private int parallelism;
+
+    private ExecutorService executor;
+
+    private final Map<File, Object> repositoryLocks = new ConcurrentHashMap<>();
+
+    private final List<String> succeeded = new CopyOnWriteArrayList<>();
+
+    private final Set<String> skipped = ConcurrentHashMap.newKeySet();
+
+    private final List<String> failed = new CopyOnWriteArrayList<>();
+
+    /**
+     * The facets of a project this action always reads. The Git status and
+     * tracking information is only needed for projects that aren't up to
+     * date, and loaded lazily.
+     * 
+     * @return The facets.
+     */
+    public Set<Facet> requiredFacets() {
+        return EnumSet.of(Facet.GRADLE, Facet.GIT);
+    }
 
     @Override
     public void accept(ProjectMetadata project) {
+        if (parallelism <= 1) {
+            upgradeProject(project);
+            return;
+        }
+
+        synchronized (this) {
+            if (executor == null) {
+                executor = Executors.newFixedThreadPool(parallelism);
+            }
+        }
+        executor.execute(() -> {
+            out.startBuffering();
+            try {
+                upgradeProject(project);
+            } finally {
+                out.flushBuffer();
+            }
+        });
+    }
+
+    /**
+     * Wait for all running upgrades to finish and print a summary.
+     */
+    public void finish() {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdown();
+                try {
+                    while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                        // Keep waiting
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    executor.shutdownNow();
+                }
+                executor = null;
+            }
+        }
+
+        out.println(succeeded.size() + " project(s) upgraded, " + skipped.size() + " skipped, " + failed.size()
+            + " failed");
+        for (String failure : failed) {
+            out.println(ansi().fgBrightRed().a("    - " + failure).reset());
+        }
+    }
+
+    /**
+     * Get the specified project as this run left it, once it has been
+     * finished: analyzed again if an upgrade has been attempted, since even a
+     * failed one might have changed the wrapper, as found otherwise.
+     * 
+     * @param project
+     *            The project as found by the scan.
+     * @return The project's current state.
+     */
+    public ProjectMetadata currentState(ProjectMetadata project) {
+        if (skipped.contains(project.getProjectDir().getPath())) {
+            return project;
+        }
+        return analyzer.analyzeProjectDir(project.getProjectDir(), requiredFacets()).orElse(project);
+    }
+
+    /**
+     * Stop all upgrades that are still running.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Upgrade the specified project right away on the calling thread, if
+     * applicable, without recording it for the summary.
+     * 
+     * @param project
+     *            The project.
+     * @return The outcome.
+     */
+    public Outcome upgradeNow(ProjectMetadata project) {
+        // Projects sharing a Git repository must not be committed concurrently
+        Object lock = project.getGitDir() == null ? new Object()
+            : repositoryLocks.computeIfAbsent(project.getGitDir(), gitDir -> new Object());
+        synchronized (lock) {
+            try {
+                if (doUpgradeProject(project)) {
+                    profile.count("upgrades.succeeded");
+                    return Outcome.SUCCEEDED;
+                }
+                profile.count("upgrades.skipped");
+                return Outcome.SKIPPED;
+            } catch (RuntimeException e) {
+                out.println(ansi().fgBrightRed().a("     " + e.getMessage()).reset());
+                profile.count("upgrades.failed");
+                return new Outcome(String.valueOf(e.getMessage()));
+            } finally {
+                out.println("");
+            }
+        }
+    }
+
+    private void upgradeProject(ProjectMetadata project) {
+        Outcome outcome = upgradeNow(project);
+        if (outcome.isFailed()) {
+            failed.add(project.getProjectDir().getPath() + ": " + outcome.getFailure());
+        } else if (outcome == Outcome.SUCCEEDED) {
+            succeeded.add(project.getProjectDir().getPath());
+        } else {
+            skipped.add(project.getProjectDir().getPath());
+        }
+    }
+
+    private boolean doUpgradeProject(ProjectMetadata project) {
         out.println(">> Project: " + project.getProjectDir().getPath());
         out.println(ansi().a("    Gradle: ").bold().format("%-10s ", project.getGradleVersion()).boldOff()
             .a(out.formatVersionUpToDate(project)));
@@ -65,23 +254,29 @@ public class UpgradeAction implements Consumer<ProjectMetadata> {
                 ansi().fgBrightGreen().a("   Upgrading project to Gradle " + gradleInfo.latestGradleVersion()).reset());
 
             if (!dryRun) {
-                doUpgrate(project);
+                out.countUpgradeStarted();
+                boolean verifiable;
+                try {
+                    verifiable = doUpgrate(project);
+                } finally {
+                    out.countUpgradeFinished();
+                }
                 try {
                     if (project.isUnderGitVersionControl()) {
-                        doCommitAndPush(project);
+                        doCommitAndPush(project, verifiable);
                     } else {
                         out.println("   Project not under version control");
                     }
                 } catch (RuntimeException e) {
-                    out.println(ansi().fgBrightRed().a("     Commit/Push error: " + e.getMessage()).reset());
+                    throw new UpgradeException("Commit/Push error: " + e.getMessage(), e);
                 }
+                return true;
             }
         }
-
-        out.println("");
+        return false;
     }
 
-    private void doCommitAndPush(ProjectMetadata project) {
+    private void doCommitAndPush(ProjectMetadata project, boolean verifiable) {
         if (!commit) {
             out.println("   Committing disabled");
             return;
@@ -89,92 +284,190 @@ public class UpgradeAction implements Consumer<ProjectMetadata> {
 
         out.println("   Committing changes");
 
-        FileRepositoryBuilder gitBuilder = new FileRepositoryBuilder()
-            // scan environment GIT_* variables
-            .readEnvironment()
-            // scan up the file system tree
-            .findGitDir(project.getProjectDir());
-
-        out.printVolatile(">> Adding changes to Git index...");
-        try (Repository repository = gitBuilder.build()) {
-            try (Git gitCall = new Git(repository)) {
-                gitCall.add().addFilepattern(".").call();
-            }
-            out.printVolatile(">> Committing...");
-            try (Git gitCall = new Git(repository)) {
+        out.printVolatile(">> Committing...");
+        try (Repository repository = gitRepositories.openGitDir(project.getGitDir())) {
+            String prefix = GitStatusChecker.relativePath(repository, project.getProjectDir());
+            RevCommit upgradeCommit = profile.time(Phase.COMMIT, project.getProjectDir(), () -> {
                 String message = "build: upgrade Gradle from v" + project.getGradleVersion() + " to v"
                     + gradleInfo.latestGradleVersion();
-                gitCall.commit().setAllowEmpty(false).setMessage(message).call();
-            }
+                return commitWrapper(repository, prefix, message);
+            });
             out.println("    Commit successful");
             if (push) {
                 out.printVolatile(">> Pushing...");
                 ByteArrayOutputStream baos = new ByteArrayOutputStream();
                 try (Git gitCall = new Git(repository)) {
-                    gitCall.push().setAtomic(true).setOutputStream(baos).call();
+                    profile.time(Phase.PUSH, project.getProjectDir(),
+                        () -> gitCall.push().setAtomic(true).setOutputStream(baos).call());
                 } catch (RuntimeException | GitAPIException e) {
                     throw new RuntimeException(baos + "\n" + e.getMessage(), e);
                 }
                 out.println("    Push successful");
             }
+            // The post-upgrade build has verified exactly this commit, unless
+            // the working tree held more than its HEAD
+            if (verifiable) {
+                verifiedBuilds.record(VerifiedBuilds.path(repository, project.getProjectDir()), upgradeCommit,
+                    gradleInfo.latestGradleVersion(), checkTasks);
+            }
         } catch (IOException | GitAPIException e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
-    private void doUpgrate(ProjectMetadata project) {
-        try (ProjectConnection projectConnection = GradleConnector.newConnector()
-            .forProjectDirectory(project.getProjectDir()).connect()) {
+    /**
+     * Commit the wrapper files of the project at the specified path within
+     * the working tree, and nothing else: the rest of the working tree and
+     * the index might not have been checked for changes. Package-private for
+     * testing.
+     */
+    static RevCommit commitWrapper(Repository repository, String prefix, String message) throws GitAPIException {
+        try (Git gitCall = new Git(repository)) {
+            AddCommand add = gitCall.add();
+            CommitCommand commit = gitCall.commit().setAllowEmpty(false).setMessage(message);
+            for (String wrapperFile : WRAPPER_FILES) {
+                add.addFilepattern(prefix + wrapperFile);
+                commit.setOnly(prefix + wrapperFile);
+            }
+            add.call();
+            return commit.call();
+        }
+    }
 
-            // Make sure the build works before attempting the upgrade
+    /**
+     * Upgrade the wrapper and verify the build.
+     *
+     * @return Whether the working tree was exactly its HEAD, so that the
+     *         builds can be remembered for the commit of the upgrade.
+     */
+    private boolean doUpgrate(ProjectMetadata project) {
+        // Make sure the build works before attempting the upgrade, unless it
+        // is known to work already
+        ObjectId head = cleanHead(project);
+        String path = head == null ? null : repositoryPath(project);
+        Optional<Instant> verifiedAt = path == null ? Optional.empty()
+            : verifiedBuilds.lookup(path, head, project.getGradleVersion(), checkTasks);
+        if (verifiedAt.isPresent()) {
+            out.println("    Pre-upgrade build skipped: commit " + head.abbreviate(7).name()
+                + " has already been built successfully with Gradle " + project.getGradleVersion() + " at "
+                + verifiedAt.get());
+            profile.count("pre-upgrade-builds.skipped");
+        } else {
             try {
-                out.printVolatile(">> Building before upgrading...");
-                projectConnection.newBuild().forTasks(checkTasks)
-                    .addProgressListener(e -> reportProgress(">> Pre-upgrade build: ", e), OperationType.TASK,
-                        OperationType.TEST)
-                    .run();
+                profile.time(Phase.PRE_UPGRADE_BUILD, project.getProjectDir(), () -> {
+                    out.printVolatile(">> Building before upgrading...");
+                    runTasks(project, project.getGradleVersion(), ">> Pre-upgrade build: ", checkTasks);
+                });
                 out.println("    Pre-upgrade build successful");
             } catch (Exception e) {
                 throw new UpgradeException("Pre-upgrade build failed: " + e.getMessage(), e);
             }
+            if (path != null) {
+                verifiedBuilds.record(path, head, project.getGradleVersion(), checkTasks);
+            }
+        }
 
-            // Upgrade the wrapper
+        try (WrapperUpgrader.Backup backup = wrapperUpgrader.backup(project.getProjectDir())) {
             try {
-                out.printVolatile(">> Upgrading the Gradle wrapper...");
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                String wrapperScript = new File(project.getProjectDir(), windows ? "gradlew.bat" : "gradlew")
-                    .getCanonicalPath();
-                ProcessBuilder pb = new ProcessBuilder(wrapperScript, "wrapper", "--gradle-version",
-                    gradleInfo.latestGradleVersion())
-                        .directory(project.getProjectDir());
-                Process process = pb.start();
-                StreamUtils.copy(process.getInputStream(), baos);
-                int exitValue = process.waitFor();
-                if (exitValue != 0 && baos.toString().indexOf("BUILD SUCCESSFUL") < 0) {
-                    throw new UpgradeException(
-                        "Process returned non-zero value (" + exitValue + "). Output: " + baos.toString());
+                // Upgrade the wrapper
+                try {
+                    profile.time(Phase.WRAPPER_UPGRADE, project.getProjectDir(), () -> {
+                        out.printVolatile(">> Upgrading the Gradle wrapper...");
+                        wrapperUpgrader.upgrade(project.getProjectDir(), gradleInfo.latestGradleVersion());
+                    });
+                    out.println("    Wrapper upgrade successful");
+                } catch (Exception e) {
+                    throw new UpgradeException("Wrapper upgrade failed: " + e.getMessage(), e);
+                } finally {
+                    // Now that the gradle version has changed, a new connection is needed
+                    gradleConnections.invalidate(project.getProjectDir());
                 }
-                out.println("    Wrapper upgrade successful");
-            } catch (Exception e) {
-                throw new UpgradeException("Wrapper upgrade failed: " + e.getMessage(), e);
+
+                // Make sure the build still works after the upgrade, starting
+                // with the stages that fail fastest
+                if (verifyConfiguration) {
+                    verifyStage(project, Phase.POST_UPGRADE_CONFIGURATION, "configuration", checkTasks, "--dry-run");
+                }
+                if (compileTasks.length > 0) {
+                    verifyStage(project, Phase.POST_UPGRADE_COMPILATION, "compilation", compileTasks);
+                }
+                verifyStage(project, Phase.POST_UPGRADE_BUILD, "build", checkTasks);
+            } catch (RuntimeException e) {
+                rollBack(project, backup);
+                throw e;
             }
         }
+        return path != null;
+    }
 
-        // Now that the gradle version has changed, create a new connection
-        try (ProjectConnection projectConnection = GradleConnector.newConnector()
-            .forProjectDirectory(project.getProjectDir()).connect()) {
+    private void verifyStage(ProjectMetadata project, Phase phase, String stage, String[] tasks,
+        String... extraArguments) {
 
-            // Make sure the build still works after the upgrade
-            try {
-                out.printVolatile(">> Building after upgrading...");
-                projectConnection.newBuild().forTasks(checkTasks)
-                    .addProgressListener(e -> reportProgress(">> Post-upgrade build: ", e), OperationType.TASK,
-                        OperationType.TEST)
-                    .run();
-                out.println("    Post-upgrade build successful");
-            } catch (Exception e) {
-                throw new UpgradeException("Post-upgrade build failed: " + e.getMessage(), e);
+        try {
+            profile.time(phase, project.getProjectDir(), () -> {
+                out.printVolatile(">> Post-upgrade " + stage + "...");
+                runTasks(project, gradleInfo.latestGradleVersion(), ">> Post-upgrade " + stage + ": ", tasks,
+                    extraArguments);
+            });
+            out.println("    Post-upgrade " + stage + " successful");
+        } catch (Exception e) {
+            throw new UpgradeException("Post-upgrade " + stage + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void rollBack(ProjectMetadata project, WrapperUpgrader.Backup backup) {
+        try {
+            backup.restore();
+            out.println("    Wrapper rolled back to Gradle " + project.getGradleVersion());
+        } catch (IOException e) {
+            out.println(ansi().fgBrightRed().a("    Unable to roll back the wrapper: " + e.getMessage()).reset());
+        } finally {
+            gradleConnections.invalidate(project.getProjectDir());
+        }
+    }
+
+    private void runTasks(ProjectMetadata project, GradleVersion gradleVersion, String progressPrefix,
+        String[] tasks, String... extraArguments) {
+
+        ProjectConnection projectConnection = gradleConnections.connect(project.getProjectDir());
+        BuildLauncher build = gradleConnections.configure(projectConnection.newBuild());
+        verificationProfile.configure(build, project.getProjectDir(), gradleVersion, extraArguments)
+            .forTasks(tasks)
+            .addProgressListener(e -> reportProgress(progressPrefix, e), OperationType.TASK, OperationType.TEST)
+            .run();
+    }
+
+    /**
+     * The commit checked out in the project's working tree, if the working
+     * tree is clean and thus identified by it.
+     */
+    private ObjectId cleanHead(ProjectMetadata project) {
+        if (!project.isUnderGitVersionControl() || !project.isClean()) {
+            return null;
+        }
+        try (Repository repository = gitRepositories.openGitDir(project.getGitDir())) {
+            // The faster strategies miss changes that the build would pick up
+            if (!GitStatusChecker.Strategy.FULL.equals(gitStatusChecker.getStrategy())
+                && !gitStatusChecker.isFullyClean(repository, project.getProjectDir())) {
+                return null;
             }
+            return repository.resolve(Constants.HEAD);
+        } catch (IOException | RuntimeException e) {
+            // The build will just be run
+            return null;
+        }
+    }
+
+    /**
+     * The project's path within its Git repository, as verified builds are
+     * recorded with.
+     */
+    private String repositoryPath(ProjectMetadata project) {
+        try (Repository repository = gitRepositories.openGitDir(project.getGitDir())) {
+            return VerifiedBuilds.path(repository, project.getProjectDir());
+        } catch (IOException | RuntimeException e) {
+            // The build will just be run
+            return null;
         }
     }
 
@@ -188,6 +481,7 @@ public class UpgradeAction implements Consumer<ProjectMetadata> {
         }
         boolean doUpgrade = true;
         if (project.isUnderGitVersionControl()) {
+            project.load(EnumSet.of(Facet.GIT_STATUS, Facet.GIT_TRACKING));
             if (!project.isClean()) {
                 notUpgrading(doUpgrade, "Git working directory not clean");
                 doUpgrade = false;
@@ -212,4 +506,46 @@ public class UpgradeAction implements Consumer<ProjectMetadata> {
         }
         out.println("    - " + reason);
     }
+
+    /**
+     * The outcome of a project's upgrade.
+     */
+    public static final class Outcome {
+
+        /**
+         * The project has been upgraded.
+         */
+        public static final Outcome SUCCEEDED = new Outcome(null);
+
+        /**
+         * The project didn't need or wasn't eligible for an upgrade, or it
+         * would have been upgraded in dry-run mode.
+         */
+        public static final Outcome SKIPPED = new Outcome(null);
+
+        private final String failure;
+
+        private Outcome(String failure) {
+            this.failure = failure;
+        }
+
+        /**
+         * Whether the upgrade failed.
+         * 
+         * @return Returns <code>true</code> if the upgrade failed.
+         */
+        public boolean isFailed() {
+            return failure != null;
+        }
+
+        /**
+         * Get the failure.
+         * 
+         * @return Returns the reason the upgrade failed, <code>null</code> if
+         *         it didn't fail.
+         */
+        public String getFailure() {
+            return failure;
+        }
+    }
 }
@@ -0,0 +1,145 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.gradle.tooling.BuildLauncher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+/**
+ * The command line arguments of the builds verifying a project before and
+ * after its upgrade. Arguments a project's Gradle version doesn't support yet
+ * are left out.
+ * <p>
+ * With the build cache enabled, every project gets a local build cache of its
+ * own in the cache directory, shared by all its verification builds but not
+ * with any other build.
+ */
+@Component
+public class VerificationProfile {
+
+    private static final GradleVersion BUILD_CACHE_SINCE = GradleVersion.of("3.5");
+
+    private static final GradleVersion MAX_WORKERS_SINCE = GradleVersion.of("4.0");
+
+    private static final GradleVersion CONFIGURATION_CACHE_SINCE = GradleVersion.of("6.6");
+
+    private static final String INIT_SCRIPT = "verification.init.gradle";
+
+    @Value("${verify-build-cache:true}")
+    private boolean buildCache;
+
+    @Value("${verify-build-cache-dir:}")
+    private String buildCacheDir;
+
+    @Value("${verify-parallel:false}")
+    private boolean parallel;
+
+    @Value("${verify-offline:false}")
+    private boolean offline;
+
+    @Value("${verify-configuration-cache:false}")
+    private boolean configurationCache;
+
+    @Value("${verify-max-workers:0}")
+    private int maxWorkers;
+
+    @Value("${verify-arguments:}")
+    private String additionalArguments;
+
+    @Value("${cache-dir:${user.home}/.gradle-version-tool}")
+    private File cacheDir;
+
+    private File initScript;
+
+    /**
+     * Apply the verification arguments to the specified build.
+     *
+     * @param build
+     *            The build.
+     * @param projectDir
+     *            The directory of the project to be built.
+     * @param gradleVersion
+     *            The Gradle version the build runs with.
+     * @param extraArguments
+     *            Further arguments for this build only, e.g.
+     *            <code>--dry-run</code>.
+     * @return The build, for chaining.
+     */
+    public BuildLauncher configure(BuildLauncher build, File projectDir, GradleVersion gradleVersion,
+        String... extraArguments) {
+
+        List<String> arguments = arguments(projectDir, gradleVersion);
+        arguments.addAll(Arrays.asList(extraArguments));
+        if (!arguments.isEmpty()) {
+            build.withArguments(arguments);
+        }
+        return build;
+    }
+
+    private List<String> arguments(File projectDir, GradleVersion gradleVersion) {
+        List<String> arguments = new ArrayList<>();
+        if (buildCache && supports(gradleVersion, BUILD_CACHE_SINCE)) {
+            arguments.add("--build-cache");
+            arguments.add("--init-script");
+            arguments.add(initScript().getPath());
+            arguments.add("-Dgradle-version-tool.build-cache-dir=" + projectBuildCacheDir(projectDir).getPath());
+        }
+        if (parallel) {
+            arguments.add("--parallel");
+        }
+        if (offline) {
+            arguments.add("--offline");
+        }
+        if (configurationCache && supports(gradleVersion, CONFIGURATION_CACHE_SINCE)) {
+            arguments.add("--configuration-cache");
+        }
+        if (maxWorkers > 0 && supports(gradleVersion, MAX_WORKERS_SINCE)) {
+            arguments.add("--max-workers=" + maxWorkers);
+        }
+        String additional = additionalArguments.trim();
+        if (!additional.isEmpty()) {
+            arguments.addAll(Arrays.asList(additional.split("\\s+")));
+        }
+        return arguments;
+    }
+
+    private static boolean supports(GradleVersion gradleVersion, GradleVersion since) {
+        return gradleVersion != null && gradleVersion.compareTo(since) >= 0;
+    }
+
+    private File projectBuildCacheDir(File projectDir) {
+        File baseDir = buildCacheDir.isEmpty() ? new File(cacheDir, "build-caches") : new File(buildCacheDir);
+        String path;
+        try {
+            path = projectDir.getCanonicalPath();
+        } catch (IOException e) {
+            path = projectDir.getAbsolutePath();
+        }
+        // Readable, yet unique per project
+        String name = projectDir.getName() + "-" + DigestUtils.md5DigestAsHex(path.getBytes()).substring(0, 8);
+        return new File(baseDir, name).getAbsoluteFile();
+    }
+
+    private synchronized File initScript() {
+        if (initScript == null) {
+            File file = new File(cacheDir, INIT_SCRIPT).getAbsoluteFile();
+            try (InputStream script = getClass().getResourceAsStream(INIT_SCRIPT)) {
+                file.getParentFile().mkdirs();
+                Files.copy(script, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to write the init script: " + e.getMessage(), e);
+            }
+            initScript = file;
+        }
+        return initScript;
+    }
+}
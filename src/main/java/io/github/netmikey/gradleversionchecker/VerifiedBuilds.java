@@ -0,0 +1,306 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.fusesource.jansi.Ansi.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Persistent record of successful builds, so that a build of exactly the same
+ * state doesn't have to be repeated.
+ * <p>
+ * A build is identified by the Git commit, the path of the project within the
+ * repository, the Gradle version and the tasks that have been run, none of
+ * which depend on where the repository is checked out: the store can be
+ * shared with CI. Only builds of clean working trees are recorded, since
+ * otherwise the commit doesn't identify what has been built.
+ * <p>
+ * The store is an optimization: if it cannot be read or written, builds are
+ * just run again.
+ */
+@Component
+public class VerifiedBuilds {
+
+    private static final String STORE_FILE_NAME = "verified-builds.json";
+
+    /**
+     * The number of builds kept, the oldest ones are forgotten first.
+     */
+    private static final int MAX_ENTRIES = 1000;
+
+    @Autowired
+    private ConsoleWriter out;
+
+    @Value("${verified-builds:true}")
+    private boolean enabled;
+
+    @Value("${verified-builds-file:}")
+    private String storeFile;
+
+    @Value("${cache-dir:${user.home}/.gradle-version-tool}")
+    private File cacheDir;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        .enable(SerializationFeature.INDENT_OUTPUT);
+
+    private Map<String, Entry> entries;
+
+    /**
+     * The path of a project within its repository, as builds are recorded
+     * with: relative to the working tree's root, with forward slashes, or
+     * <code>.</code> for the root itself.
+     *
+     * @param repository
+     *            The project's repository.
+     * @param projectDir
+     *            The project's directory.
+     * @return The path.
+     * @throws IOException
+     *             If the directories cannot be resolved.
+     */
+    public static String path(Repository repository, File projectDir) throws IOException {
+        String prefix = GitStatusChecker.relativePath(repository, projectDir);
+        return prefix.isEmpty() ? "." : prefix.replaceFirst("/$", "");
+    }
+
+    /**
+     * Look up a successful build of the specified project state.
+     *
+     * @param path
+     *            The project's path within its repository, see
+     *            {@link #path(Repository, File)}.
+     * @param commit
+     *            The commit checked out in the clean working tree.
+     * @param gradleVersion
+     *            The Gradle version of the build.
+     * @param tasks
+     *            The tasks run by the build.
+     * @return The time the build has been verified, if it has been.
+     */
+    public synchronized Optional<Instant> lookup(String path, ObjectId commit, GradleVersion gradleVersion,
+        String[] tasks) {
+
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Entry entry = entries().get(key(path, commit.getName(), gradleVersion.toString(), String.join(",", tasks)));
+        if (entry == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Instant.parse(entry.getVerifiedAt()));
+        } catch (RuntimeException e) {
+            // Written by someone else: the build is known, just not when
+            return Optional.of(Instant.EPOCH);
+        }
+    }
+
+    /**
+     * Record a successful build of the specified project state and write the
+     * store back to disk. A store that cannot be written is reported, but
+     * doesn't fail the caller.
+     *
+     * @param path
+     *            The project's path within its repository, see
+     *            {@link #path(Repository, File)}.
+     * @param commit
+     *            The commit checked out in the clean working tree.
+     * @param gradleVersion
+     *            The Gradle version of the build.
+     * @param tasks
+     *            The tasks run by the build.
+     */
+    public synchronized void record(String path, ObjectId commit, GradleVersion gradleVersion, String[] tasks) {
+        if (!enabled) {
+            return;
+        }
+        Entry entry = new Entry();
+        entry.setCommit(commit.getName());
+        entry.setPath(path);
+        entry.setGradleVersion(gradleVersion.toString());
+        entry.setTasks(String.join(",", tasks));
+        entry.setVerifiedAt(Instant.now().toString());
+        Map<String, Entry> allEntries = entries();
+        // Keep the latest builds last, so that the oldest ones go first
+        allEntries.remove(key(entry));
+        allEntries.put(key(entry), entry);
+        while (allEntries.size() > MAX_ENTRIES) {
+            allEntries.remove(allEntries.keySet().iterator().next());
+        }
+
+        File file = file();
+        try {
+            file.getParentFile().mkdirs();
+            mapper.writeValue(file, new ArrayList<>(allEntries.values()));
+        } catch (IOException e) {
+            out.println(ansi().fgBrightRed().a("    Unable to write the verified builds to " + file + ": "
+                + e.getMessage()).reset());
+        }
+    }
+
+    private Map<String, Entry> entries() {
+        if (entries == null) {
+            List<Entry> stored = new ArrayList<>();
+            File file = file();
+            if (file.isFile()) {
+                try {
+                    stored.addAll(mapper.readValue(file, new TypeReference<List<Entry>>() {
+                        // Type capture
+                    }));
+                } catch (IOException e) {
+                    // Builds that cannot be read will just be run again
+                    out.println(ansi().fgBrightRed().a("    Unable to read the verified builds from " + file + ": "
+                        + e.getMessage()).reset());
+                }
+            }
+            stored.sort(Comparator.comparing(entry -> String.valueOf(entry.getVerifiedAt())));
+            entries = new LinkedHashMap<>();
+            for (Entry entry : stored) {
+                entries.put(key(entry), entry);
+            }
+        }
+        return entries;
+    }
+
+    private File file() {
+        return storeFile.isEmpty() ? new File(cacheDir, STORE_FILE_NAME) : new File(storeFile).getAbsoluteFile();
+    }
+
+    private static String key(Entry entry) {
+        return key(entry.getPath(), entry.getCommit(), entry.getGradleVersion(), entry.getTasks());
+    }
+
+    private static String key(String path, String commit, String gradleVersion, String tasks) {
+        return commit + " " + gradleVersion + " " + tasks + " " + path;
+    }
+
+    /**
+     * A successful build of a project.
+     */
+    public static class Entry {
+
+        private String commit;
+
+        private String path;
+
+        private String gradleVersion;
+
+        private String tasks;
+
+        private String verifiedAt;
+
+        /**
+         * Get the commit.
+         *
+         * @return Returns the commit.
+         */
+        public String getCommit() {
+            return commit;
+        }
+
+        /**
+         * Set the commit.
+         *
+         * @param commit
+         *            The commit to set.
+         */
+        public void setCommit(String commit) {
+            this.commit = commit;
+        }
+
+        /**
+         * Get the path.
+         *
+         * @return Returns the project's path within its repository.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Set the path.
+         *
+         * @param path
+         *            The project's path within its repository to set.
+         */
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Get the gradleVersion.
+         *
+         * @return Returns the gradleVersion.
+         */
+        public String getGradleVersion() {
+            return gradleVersion;
+        }
+
+        /**
+         * Set the gradleVersion.
+         *
+         * @param gradleVersion
+         *            The gradleVersion to set.
+         */
+        public void setGradleVersion(String gradleVersion) {
+            this.gradleVersion = gradleVersion;
+        }
+
+        /**
+         * Get the tasks.
+         *
+         * @return Returns the comma-separated tasks.
+         */
+        public String getTasks() {
+            return tasks;
+        }
+
+        /**
+         * Set the tasks.
+         *
+         * @param tasks
+         *            The comma-separated tasks to set.
+         */
+        public void setTasks(String tasks) {
+            this.tasks = tasks;
+        }
+
+        /**
+         * Get the verifiedAt.
+         *
+         * @return Returns the time of the build, in ISO-8601 format.
+         */
+        public String getVerifiedAt() {
+            return verifiedAt;
+        }
+
+        /**
+         * Set the verifiedAt.
+         *
+         * @param verifiedAt
+         *            The time of the build to set, in ISO-8601 format.
+         */
+        public void setVerifiedAt(String verifiedAt) {
+            this.verifiedAt = verifiedAt;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.gradle.tooling.ProjectConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Upgrades a project's Gradle wrapper to another Gradle version.
+ * <p>
+ * By default, the wrapper files are rewritten directly: the distribution
+ * settings in <code>gradle-wrapper.properties</code> are updated and the
+ * wrapper jar and scripts are copied from a template for the target version,
+ * which is generated once and cached. Alternatively, the project's own
+ * <code>gradlew wrapper</code> can be used.
+ */
+@Component
+public class WrapperUpgrader {
+
+    /**
+     * The wrapper files taken from the template, relative to the project
+     * directory.
+     */
+    public static final List<String> TEMPLATE_FILES = Arrays.asList("gradlew", "gradlew.bat",
+        "gradle/wrapper/gradle-wrapper.jar");
+
+    private static final Pattern DISTRIBUTION_URL_LINE_PATTERN = Pattern
+        .compile("^(\\s*distributionUrl\\s*[=:]\\s*)(.*/gradle-)([^/]+?)(-(bin|all)\\.zip)\\s*$");
+
+    private static final Pattern SHA256_LINE_PATTERN = Pattern.compile("^(\\s*distributionSha256Sum\\s*[=:]\\s*).*$");
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    @Autowired
+    private GradleConnections gradleConnections;
+
+    @Value("${wrapper-upgrade:NATIVE}")
+    private Mode mode;
+
+    @Value("${cache-dir:${user.home}/.gradle-version-tool}")
+    private File cacheDir;
+
+    /**
+     * The checksums fetched so far, by distribution URL: bulk upgrades fetch
+     * the same one over and over again.
+     */
+    private final Map<String, String> sha256s = new ConcurrentHashMap<>();
+
+    private boolean windows = System.getProperty("os.name").toLowerCase().indexOf("win") >= 0;
+
+    /**
+     * Upgrade the wrapper of the specified project.
+     *
+     * @param projectDir
+     *            The project's directory.
+     * @param gradleVersion
+     *            The Gradle version to upgrade to.
+     */
+    public void upgrade(File projectDir, GradleVersion gradleVersion) {
+        try {
+            if (Mode.GRADLEW.equals(mode)) {
+                upgradeUsingGradlew(projectDir, gradleVersion);
+            } else {
+                upgradeNatively(projectDir, gradleVersion);
+            }
+        } catch (IOException e) {
+            throw new UpgradeException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UpgradeException("Interrupted", e);
+        }
+    }
+
+    /**
+     * Back up the wrapper files of the specified project, so that an upgrade
+     * can be rolled back.
+     *
+     * @param projectDir
+     *            The project's directory.
+     * @return The backup, to be closed once it isn't needed anymore.
+     */
+    public Backup backup(File projectDir) {
+        List<String> files = new ArrayList<>(TEMPLATE_FILES);
+        files.add(GradleWrapperProperties.PATH);
+        try {
+            Path backupDir = Files.createTempDirectory("gradle-wrapper-backup");
+            List<String> existingFiles = new ArrayList<>();
+            for (String file : files) {
+                Path source = projectDir.toPath().resolve(file);
+                if (Files.isRegularFile(source)) {
+                    Path target = backupDir.resolve(file);
+                    Files.createDirectories(target.getParent());
+                    Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+                    existingFiles.add(file);
+                }
+            }
+            return new Backup(projectDir.toPath(), backupDir, files, existingFiles);
+        } catch (IOException e) {
+            throw new UpgradeException("Unable to back up the wrapper: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the template directory containing the wrapper files of the specified
+     * Gradle version, generating it if necessary.
+     *
+     * @param gradleVersion
+     *            The Gradle version.
+     * @return The template directory.
+     * @throws IOException
+     *             If the template cannot be generated.
+     */
+    public synchronized File template(GradleVersion gradleVersion) throws IOException {
+        File templateDir = new File(cacheDir, "wrapper-templates/" + gradleVersion);
+        if (templateDir.isDirectory()) {
+            return templateDir;
+        }
+
+        Path workDir = Files.createTempDirectory("gradle-wrapper-template");
+        Path stagingDir = null;
+        try {
+            generateWrapper(workDir, gradleVersion);
+
+            // Staged next to the template so that it can be moved atomically
+            Path templatesDir = Files.createDirectories(templateDir.getParentFile().toPath());
+            stagingDir = Files.createTempDirectory(templatesDir, gradleVersion + "-");
+            for (String templateFile : TEMPLATE_FILES) {
+                Path target = stagingDir.resolve(templateFile);
+                Files.createDirectories(target.getParent());
+                Files.copy(workDir.resolve(templateFile), target);
+            }
+            Files.move(stagingDir, templateDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            stagingDir = null;
+        } finally {
+            FileSystemUtils.deleteRecursively(workDir);
+            if (stagingDir != null) {
+                FileSystemUtils.deleteRecursively(stagingDir);
+            }
+        }
+        return templateDir;
+    }
+
+    /**
+     * Let the specified Gradle version generate its wrapper in an empty build.
+     * Package-private for testing.
+     */
+    void generateWrapper(Path workDir, GradleVersion gradleVersion) throws IOException {
+        Files.write(workDir.resolve("settings.gradle"), new byte[0]);
+        try {
+            ProjectConnection connection = gradleConnections.connect(workDir.toFile(), gradleVersion.toString());
+            gradleConnections.configure(connection.newBuild().forTasks("wrapper")).run();
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to generate the wrapper of Gradle " + gradleVersion + ": "
+                + e.getMessage(), e);
+        } finally {
+            gradleConnections.invalidate(workDir.toFile());
+        }
+    }
+
+    private void upgradeNatively(File projectDir, GradleVersion gradleVersion) throws IOException {
+        Path propertiesFile = projectDir.toPath().resolve(GradleWrapperProperties.PATH);
+        if (!Files.isRegularFile(propertiesFile)) {
+            throw new UpgradeException(GradleWrapperProperties.PATH + " not found");
+        }
+        String newProperties = rewriteProperties(
+            new String(Files.readAllBytes(propertiesFile), StandardCharsets.ISO_8859_1), gradleVersion);
+
+        File templateDir = template(gradleVersion);
+
+        Files.write(propertiesFile, newProperties.getBytes(StandardCharsets.ISO_8859_1));
+        for (String templateFile : TEMPLATE_FILES) {
+            Path target = projectDir.toPath().resolve(templateFile);
+            Files.createDirectories(target.getParent());
+            Files.copy(new File(templateDir, templateFile).toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        projectDir.toPath().resolve("gradlew").toFile().setExecutable(true);
+    }
+
+    /**
+     * A copy of a project's wrapper files taken before an upgrade.
+     */
+    public static class Backup implements AutoCloseable {
+
+        private final Path projectDir;
+
+        private final Path backupDir;
+
+        private final List<String> files;
+
+        private final List<String> existingFiles;
+
+        Backup(Path projectDir, Path backupDir, List<String> files, List<String> existingFiles) {
+            this.projectDir = projectDir;
+            this.backupDir = backupDir;
+            this.files = files;
+            this.existingFiles = existingFiles;
+        }
+
+        /**
+         * Restore the wrapper files as they were when the backup was taken,
+         * deleting the ones that didn't exist back then.
+         *
+         * @throws IOException
+         *             If the files cannot be restored.
+         */
+        public void restore() throws IOException {
+            for (String file : files) {
+                Path target = projectDir.resolve(file);
+                if (existingFiles.contains(file)) {
+                    Files.createDirectories(target.getParent());
+                    Files.copy(backupDir.resolve(file), target, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.COPY_ATTRIBUTES);
+                } else {
+                    Files.deleteIfExists(target);
+                }
+            }
+        }
+
+        /**
+         * Delete the backup.
+         */
+        @Override
+        public void close() {
+            try {
+                FileSystemUtils.deleteRecursively(backupDir);
+            } catch (IOException e) {
+                // Left for the system to clean up
+            }
+        }
+    }
+
+    /**
+     * Rewrite the contents of a <code>gradle-wrapper.properties</code> file so
+     * that it points to the specified Gradle version, leaving all other lines
+     * untouched.
+     *
+     * @param properties
+     *            The current contents of the file.
+     * @param gradleVersion
+     *            The Gradle version to upgrade to.
+     * @return The new contents of the file.
+     * @throws IOException
+     *             If the checksum of the new distribution cannot be retrieved.
+     */
+    String rewriteProperties(String properties, GradleVersion gradleVersion) throws IOException {
+        String[] lines = properties.split("\r?\n", -1);
+        String lineSeparator = properties.contains("\r\n") ? "\r\n" : "\n";
+        String distributionUrl = null;
+        List<Integer> sha256Lines = new ArrayList<>();
+
+        for (int i = 0; i < lines.length; i++) {
+            Matcher urlMatcher = DISTRIBUTION_URL_LINE_PATTERN.matcher(lines[i]);
+            if (urlMatcher.matches()) {
+                String escapedUrl = urlMatcher.group(2) + gradleVersion + urlMatcher.group(4);
+                lines[i] = urlMatcher.group(1) + escapedUrl;
+                distributionUrl = escapedUrl.replace("\\:", ":");
+            } else if (SHA256_LINE_PATTERN.matcher(lines[i]).matches()) {
+                sha256Lines.add(i);
+            }
+        }
+        if (distributionUrl == null) {
+            throw new UpgradeException("Unable to recognize the distributionUrl in " + GradleWrapperProperties.PATH
+                + ", use wrapper-upgrade=gradlew instead");
+        }
+
+        // Keep verifying the distribution if the project did so far
+        if (!sha256Lines.isEmpty()) {
+            String sha256 = fetchSha256(distributionUrl);
+            for (int i : sha256Lines) {
+                Matcher sha256Matcher = SHA256_LINE_PATTERN.matcher(lines[i]);
+                sha256Matcher.matches();
+                lines[i] = sha256Matcher.group(1) + sha256;
+            }
+        }
+        return String.join(lineSeparator, lines);
+    }
+
+    /**
+     * Fetch the published checksum of the specified distribution.
+     * Package-private for testing.
+     */
+    String fetchSha256(String distributionUrl) throws IOException {
+        String cached = sha256s.get(distributionUrl);
+        if (cached != null) {
+            return cached;
+        }
+        HttpURLConnection con = (HttpURLConnection) new URL(distributionUrl + ".sha256").openConnection();
+        con.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        con.setReadTimeout(READ_TIMEOUT_MILLIS);
+        try (InputStream in = con.getInputStream()) {
+            String sha256 = StreamUtils.copyToString(in, StandardCharsets.US_ASCII).trim();
+            if (!sha256.matches("[0-9a-fA-F]{64}")) {
+                throw new IOException("Invalid checksum at " + distributionUrl + ".sha256: " + sha256);
+            }
+            sha256s.put(distributionUrl, sha256);
+            return sha256;
+        }
+    }
+
+    private void upgradeUsingGradlew(File projectDir, GradleVersion gradleVersion)
+        throws IOException, InterruptedException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        String wrapperScript = new File(projectDir, windows ? "gradlew.bat" : "gradlew").getCanonicalPath();
+        ProcessBuilder pb = new ProcessBuilder(wrapperScript, "wrapper", "--gradle-version", gradleVersion.toString())
+            .directory(projectDir);
+        Process process = pb.start();
+        StreamUtils.copy(process.getInputStream(), baos);
+        int exitValue = process.waitFor();
+        if (exitValue != 0 && baos.toString().indexOf("BUILD SUCCESSFUL") < 0) {
+            throw new UpgradeException(
+                "Process returned non-zero value (" + exitValue + "). Output: " + baos.toString());
+        }
+    }
+
+    /**
+     * The possible ways of upgrading the wrapper.
+     */
+    public static enum Mode {
+        /**
+         * Rewrite the wrapper files directly.
+         */
+        NATIVE,
+
+        /**
+         * Run the project's <code>gradlew wrapper</code>.
+         */
+        GRADLEW;
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests finding projects in the trees of a bare repository.
+ */
+public class BareRepositoryScannerTest {
+
+    private File repositoryDir;
+
+    private Repository repository;
+
+    /**
+     * Create an empty bare repository.
+     *
+     * @throws Exception
+     *             If the repository cannot be created.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        repositoryDir = Files.createTempDirectory("bare-repository").toFile();
+        try (Git git = Git.init().setBare(true).setDirectory(repositoryDir).call()) {
+            repository = git.getRepository();
+            repository.incrementOpen();
+        }
+    }
+
+    /**
+     * Delete the repository.
+     *
+     * @throws IOException
+     *             If the repository cannot be deleted.
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        repository.close();
+        FileUtils.delete(repositoryDir, FileUtils.RECURSIVE);
+    }
+
+    /**
+     * Projects are found with their wrapper's Gradle version, nothing below
+     * them is searched and excluded directories are pruned.
+     *
+     * @throws IOException
+     *             If the objects cannot be written or read.
+     */
+    @Test
+    public void testFindProjects() throws IOException {
+        ObjectId tree = writeTree("README.md",
+            "app/build.gradle", "app/gradlew", "app/gradle/wrapper/gradle-wrapper.properties:4.10.2",
+            "app/sub/build.gradle", "app/sub/gradlew",
+            "libs/core/build.gradle", "libs/core/gradlew",
+            "libs/legacy/build.gradle", "libs/legacy/gradlew",
+            "libs/util/build.gradle", "libs/util/gradlew", "libs/util/gradle/wrapper/gradle-wrapper.properties:5.4",
+            "node_modules/dep/build.gradle", "node_modules/dep/gradlew",
+            "build/build.gradle", "build/gradlew", "build/gradle/wrapper/gradle-wrapper.properties:5.0");
+
+        // A build named like a default exclude is never missed
+        assertEquals(Arrays.asList("app=4.10.2", "build=5.0", "libs/legacy=null", "libs/util=5.4"),
+            findProjects(tree, new PruneRules(true, Collections.singletonList("libs/core"), -1, false)));
+        assertEquals(Arrays.asList("app=4.10.2", "build=5.0"),
+            findProjects(tree, new PruneRules(true, Collections.emptyList(), 1, false)));
+    }
+
+    /**
+     * A root build is found as a project with an empty path, a build file
+     * without a wrapper stops the search without being a project.
+     *
+     * @throws IOException
+     *             If the objects cannot be written or read.
+     */
+    @Test
+    public void testBuildAtRoot() throws IOException {
+        assertEquals(Collections.singletonList("=5.4"), findProjects(writeTree("build.gradle", "gradlew",
+            "gradle/wrapper/gradle-wrapper.properties:5.4", "sub/build.gradle", "sub/gradlew"), PruneRules.NONE));
+        assertEquals(Collections.emptyList(), findProjects(writeTree("build.gradle",
+            "sub/build.gradle", "sub/gradlew", "sub/gradle/wrapper/gradle-wrapper.properties:5.4"), PruneRules.NONE));
+    }
+
+    private List<String> findProjects(ObjectId tree, PruneRules pruneRules) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader()) {
+            return BareRepositoryScanner.findProjects(reader, tree, pruneRules).stream()
+                .map(project -> project.getPath() + "=" + project.getGradleVersion())
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Write a tree of the specified files. A file's content can follow its
+     * path after a colon, wrapper properties get it as their Gradle version.
+     */
+    private ObjectId writeTree(String... files) throws IOException {
+        DirCache index = DirCache.newInCore();
+        DirCacheBuilder builder = index.builder();
+        try (ObjectInserter inserter = repository.newObjectInserter()) {
+            for (String file : files) {
+                String[] pathAndContent = file.split(":", 2);
+                String content = pathAndContent.length > 1 ? "distributionUrl=https\\://services.gradle.org/"
+                    + "distributions/gradle-" + pathAndContent[1] + "-bin.zip\n" : "";
+                DirCacheEntry entry = new DirCacheEntry(pathAndContent[0]);
+                entry.setFileMode(pathAndContent[0].endsWith("gradlew") ? FileMode.EXECUTABLE_FILE
+                    : FileMode.REGULAR_FILE);
+                entry.setObjectId(inserter.insert(Constants.OBJ_BLOB, content.getBytes(StandardCharsets.UTF_8)));
+                builder.add(entry);
+            }
+            builder.finish();
+            ObjectId tree = index.writeTree(inserter);
+            inserter.flush();
+            return tree;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefLeaseSpec;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Tests committing wrapper upgrades straight into a bare repository.
+ */
+public class BareRepositoryUpgraderTest {
+
+    private static final GradleVersion TARGET = GradleVersion.of("5.4");
+
+    private static final String MASTER = Constants.R_HEADS + "master";
+
+    private File baseDir;
+
+    private File gitDir;
+
+    private Repository repository;
+
+    private ProjectMetadata rootProject;
+
+    private ProjectMetadata subProject;
+
+    /**
+     * Create a bare repository with a root project and a subproject on
+     * different Gradle versions.
+     *
+     * @throws Exception
+     *             If the repository cannot be created.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        baseDir = Files.createTempDirectory("bare-upgrader").toFile().getCanonicalFile();
+        File workTree = new File(baseDir, "work");
+        write(workTree, "build.gradle", "apply plugin: 'java'\n");
+        write(workTree, "gradlew", "old gradlew\n");
+        write(workTree, GradleWrapperProperties.PATH, properties("5.2"));
+        write(workTree, "sub/gradlew", "old gradlew\n");
+        write(workTree, "sub/" + GradleWrapperProperties.PATH, properties("4.10.3"));
+        try (Git work = Git.init().setDirectory(workTree).call()) {
+            work.add().addFilepattern(".").call();
+            work.commit().setMessage("init").setAuthor("a", "a@b").setCommitter("a", "a@b").call();
+        }
+
+        gitDir = new File(baseDir, "repo.git");
+        Git.cloneRepository().setURI(workTree.toURI().toString()).setDirectory(gitDir).setBare(true).call()
+            .close();
+        repository = Git.open(gitDir).getRepository();
+        rootProject = project("", "5.2");
+        subProject = project("sub", "4.10.3");
+    }
+
+    /**
+     * Delete the repositories.
+     */
+    @AfterEach
+    public void tearDown() {
+        repository.close();
+        FileSystemUtils.deleteRecursively(baseDir);
+    }
+
+    /**
+     * The wrapper properties of every project are rewritten and the template
+     * files replaced, with <code>gradlew</code> executable, leaving all other
+     * files alone.
+     *
+     * @throws IOException
+     *             If the repository cannot be read.
+     */
+    @Test
+    public void testUpgradeTree() throws IOException {
+        ObjectId tree;
+        try (RevWalk revWalk = new RevWalk(repository); ObjectInserter inserter = repository.newObjectInserter()) {
+            tree = upgrader(new WrapperUpgrader()).upgradeTree(revWalk, inserter,
+                revWalk.parseCommit(repository.resolve(MASTER)).getTree(), gitDir,
+                Arrays.asList(rootProject, subProject), TARGET);
+            inserter.flush();
+        }
+
+        assertEquals(properties("5.4"), read(tree, GradleWrapperProperties.PATH));
+        assertEquals(properties("5.4"), read(tree, "sub/" + GradleWrapperProperties.PATH));
+        assertEquals("new gradlew\n", read(tree, "sub/gradlew"));
+        assertEquals("new gradlew.bat\n", read(tree, "gradlew.bat"));
+        assertEquals("new gradle/wrapper/gradle-wrapper.jar\n", read(tree, "gradle/wrapper/gradle-wrapper.jar"));
+        assertEquals(FileMode.EXECUTABLE_FILE, mode(tree, "gradlew"));
+        assertEquals(FileMode.REGULAR_FILE, mode(tree, "gradlew.bat"));
+        assertEquals("apply plugin: 'java'\n", read(tree, "build.gradle"));
+    }
+
+    /**
+     * Without a separate branch, the upgrade is committed on top of the
+     * branch, which is pushed without force.
+     *
+     * @throws IOException
+     *             If the repository cannot be updated.
+     */
+    @Test
+    public void testFastForward() throws IOException {
+        ObjectId original = repository.resolve(MASTER);
+
+        RefLeaseSpec lease = upgrader(new WrapperUpgrader()).commitUpgrade(repository, gitDir,
+            Collections.singletonList(subProject), TARGET);
+
+        assertEquals(MASTER, lease.getRef());
+        assertNull(lease.getExpected());
+        RevCommit upgrade = commit(MASTER);
+        assertEquals(original, upgrade.getParent(0));
+        assertEquals("build: upgrade Gradle from v4.10.3 to v5.4\n", upgrade.getFullMessage());
+        assertEquals(properties("5.4"), read(upgrade.getTree(), "sub/" + GradleWrapperProperties.PATH));
+        assertEquals(properties("5.2"), read(upgrade.getTree(), GradleWrapperProperties.PATH));
+    }
+
+    /**
+     * The branch isn't updated if somebody else moved it while the upgrade
+     * was being built.
+     *
+     * @throws IOException
+     *             If the repository cannot be read.
+     */
+    @Test
+    public void testBranchMoved() throws IOException {
+        ObjectId[] moved = new ObjectId[1];
+        WrapperUpgrader concurrentPush = new WrapperUpgrader() {
+            @Override
+            String rewriteProperties(String content, GradleVersion gradleVersion) throws IOException {
+                if (moved[0] == null) {
+                    moved[0] = commitOnMaster();
+                }
+                return super.rewriteProperties(content, gradleVersion);
+            }
+        };
+
+        UpgradeException e = assertThrows(UpgradeException.class, () -> upgrader(concurrentPush)
+            .commitUpgrade(repository, gitDir, Collections.singletonList(rootProject), TARGET));
+        assertEquals("Branch master changed during the upgrade", e.getMessage());
+        assertEquals(moved[0], repository.resolve(MASTER));
+    }
+
+    /**
+     * A separate branch is created from the ref, rebuilt from it once the ref
+     * has moved on, and left alone as long as it contains the upgrade.
+     *
+     * @throws IOException
+     *             If the repository cannot be updated.
+     */
+    @Test
+    public void testSeparateBranch() throws IOException {
+        String upgradeBranch = Constants.R_HEADS + "gradle-upgrade";
+        BareRepositoryUpgrader upgrader = upgrader(new WrapperUpgrader());
+        TestBeans.set(upgrader, "branch", "gradle-upgrade");
+        List<ProjectMetadata> projects = Arrays.asList(rootProject, subProject);
+        ObjectId original = repository.resolve(MASTER);
+
+        // Bare clones fetch branches straight into their own ones
+        RefLeaseSpec created = upgrader.commitUpgrade(repository, gitDir, projects, TARGET);
+        assertEquals(upgradeBranch, created.getRef());
+        assertEquals(ObjectId.zeroId().name(), created.getExpected());
+        assertEquals(original, repository.resolve(MASTER));
+        RevCommit first = commit(upgradeBranch);
+        assertEquals(original, first.getParent(0));
+
+        assertNull(upgrader.commitUpgrade(repository, gitDir, projects, TARGET));
+        assertEquals(first, repository.resolve(upgradeBranch));
+
+        ObjectId moved = commitOnMaster();
+        assertEquals(first.name(), upgrader.commitUpgrade(repository, gitDir, projects, TARGET).getExpected());
+        RevCommit rebuilt = commit(upgradeBranch);
+        assertEquals(moved, rebuilt.getParent(0));
+        assertEquals("# Project\n", read(rebuilt.getTree(), "README.md"));
+        assertEquals(properties("5.4"), read(rebuilt.getTree(), GradleWrapperProperties.PATH));
+    }
+
+    /**
+     * A separate branch is forced on the remote as long as it's where its
+     * remote tracking branch says, and the repository's projects fail if
+     * somebody else has moved it.
+     *
+     * @throws Exception
+     *             If the repositories cannot be updated.
+     */
+    @Test
+    public void testPushWithLease() throws Exception {
+        String upgradeBranch = Constants.R_HEADS + "gradle-upgrade";
+        File remoteDir = new File(baseDir, "remote.git");
+        StoredConfig config = repository.getConfig();
+        config.setString("remote", "upstream", "url", remoteDir.toURI().toString());
+        config.setString("remote", "upstream", "fetch", "+refs/heads/*:refs/remotes/upstream/*");
+        config.save();
+        GitRepositories gitRepositories = TestBeans.set(new GitRepositories(), "cacheSize", 4);
+        BareRepositoryUpgrader upgrader = upgrader(new WrapperUpgrader());
+        TestBeans.set(upgrader, "gitRepositories", gitRepositories);
+        TestBeans.set(upgrader, "branch", "gradle-upgrade");
+        TestBeans.set(upgrader, "remote", "upstream");
+        List<ProjectMetadata> projects = Collections.singletonList(rootProject);
+        ObjectId original = repository.resolve(MASTER);
+
+        try (Git remoteGit = Git.init().setDirectory(remoteDir).setBare(true).call()) {
+            Repository remoteRepository = remoteGit.getRepository();
+            upgrader.push(gitDir, upgrader.commitUpgrade(repository, gitDir, projects, TARGET), projects);
+            ObjectId first = repository.resolve(upgradeBranch);
+            assertEquals(first, remoteRepository.resolve(upgradeBranch));
+            assertEquals(first, repository.resolve("refs/remotes/upstream/gradle-upgrade"));
+
+            // Rebuilt on top of the moved ref, not a fast-forward
+            commitOnMaster();
+            RefLeaseSpec rebuilt = upgrader.commitUpgrade(repository, gitDir, projects, TARGET);
+            assertEquals(first.name(), rebuilt.getExpected());
+            upgrader.push(gitDir, rebuilt, projects);
+            ObjectId second = repository.resolve(upgradeBranch);
+            assertEquals(second, remoteRepository.resolve(upgradeBranch));
+            assertTrue(upgrader.getFailed().isEmpty());
+
+            // Somebody else moves it, unseen by the tracking branch
+            RefUpdate update = remoteRepository.updateRef(upgradeBranch);
+            update.setNewObjectId(original);
+            update.setForceUpdate(true);
+            assertEquals(RefUpdate.Result.FORCED, update.update());
+            upgrader.push(gitDir, new RefLeaseSpec(upgradeBranch, second.name()), projects);
+            assertEquals(original, remoteRepository.resolve(upgradeBranch));
+            assertEquals(1, upgrader.getFailed().size());
+            assertTrue(upgrader.getFailed().get(0).contains("REJECTED_REMOTE_CHANGED"), upgrader.getFailed().get(0));
+        } finally {
+            gitRepositories.closeAll();
+        }
+    }
+
+    /**
+     * Projects are located by their path in the repository, the root project
+     * by an empty one, and listed in the message if there is more than one.
+     */
+    @Test
+    public void testPrefixAndMessage() {
+        assertEquals("", BareRepositoryUpgrader.prefix(gitDir, rootProject));
+        assertEquals("sub/", BareRepositoryUpgrader.prefix(gitDir, subProject));
+
+        assertEquals("build: upgrade Gradle from v5.2 to v5.4\n",
+            BareRepositoryUpgrader.message(Collections.singletonList(rootProject), TARGET));
+        assertEquals("build: upgrade Gradle to v5.4\n\n- .: v5.2\n- sub: v4.10.3\n",
+            BareRepositoryUpgrader.message(Arrays.asList(rootProject, subProject), TARGET));
+        assertEquals("build: upgrade Gradle from v5.2 to v5.4\n\n- .: v5.2\n- other: v5.2\n",
+            BareRepositoryUpgrader.message(Arrays.asList(rootProject, project("other", "5.2")), TARGET));
+    }
+
+    private BareRepositoryUpgrader upgrader(WrapperUpgrader wrapperUpgrader) {
+        RunProfile profile = new RunProfile();
+        TestBeans.set(profile, "output", "");
+        Map<String, byte[]> templateFiles = new HashMap<>();
+        for (String templateFile : WrapperUpgrader.TEMPLATE_FILES) {
+            templateFiles.put(templateFile, ("new " + templateFile + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        BareRepositoryUpgrader upgrader = new BareRepositoryUpgrader();
+        TestBeans.set(upgrader, "out", ConsoleWriter.INSTANCE);
+        TestBeans.set(upgrader, "profile", profile);
+        TestBeans.set(upgrader, "wrapperUpgrader", wrapperUpgrader);
+        TestBeans.set(upgrader, "templateFiles", templateFiles);
+        TestBeans.set(upgrader, "ref", Constants.HEAD);
+        TestBeans.set(upgrader, "branch", "");
+        return upgrader;
+    }
+
+    private ProjectMetadata project(String path, String gradleVersion) {
+        ProjectMetadata project = new ProjectMetadata();
+        project.setProjectDir(path.isEmpty() ? gitDir : new File(gitDir, path));
+        project.setGitDir(gitDir);
+        project.setGradleVersion(GradleVersion.of(gradleVersion));
+        return project;
+    }
+
+    /**
+     * Commit a change on master, like somebody else pushing.
+     */
+    private ObjectId commitOnMaster() throws IOException {
+        try (RevWalk revWalk = new RevWalk(repository); ObjectInserter inserter = repository.newObjectInserter()) {
+            RevCommit head = revWalk.parseCommit(repository.resolve(MASTER));
+            DirCache index = DirCache.newInCore();
+            DirCacheBuilder builder = index.builder();
+            builder.addTree(new byte[0], DirCacheEntry.STAGE_0, revWalk.getObjectReader(), head.getTree());
+            DirCacheEntry readme = new DirCacheEntry("README.md");
+            readme.setFileMode(FileMode.REGULAR_FILE);
+            readme.setObjectId(inserter.insert(Constants.OBJ_BLOB, "# Project\n".getBytes(StandardCharsets.UTF_8)));
+            builder.add(readme);
+            builder.finish();
+
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(index.writeTree(inserter));
+            commit.setParentId(head);
+            commit.setAuthor(new PersonIdent("a", "a@b"));
+            commit.setCommitter(new PersonIdent("a", "a@b"));
+            commit.setMessage("docs: add a readme");
+            ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+            RefUpdate update = repository.updateRef(MASTER);
+            update.setNewObjectId(commitId);
+            assertEquals(RefUpdate.Result.FAST_FORWARD, update.update(revWalk));
+            return commitId;
+        }
+    }
+
+    private RevCommit commit(String branch) throws IOException {
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            return revWalk.parseCommit(repository.resolve(branch));
+        }
+    }
+
+    private String read(ObjectId tree, String path) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, tree)) {
+            assertNotNull(treeWalk, path);
+            return new String(repository.open(treeWalk.getObjectId(0)).getBytes(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private FileMode mode(ObjectId tree, String path) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, tree)) {
+            return treeWalk.getFileMode(0);
+        }
+    }
+
+    private static String properties(String gradleVersion) {
+        return "distributionUrl=https\\://services.gradle.org/distributions/gradle-" + gradleVersion + "-bin.zip\n";
+    }
+
+    private static void write(File dir, String path, String content) throws IOException {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
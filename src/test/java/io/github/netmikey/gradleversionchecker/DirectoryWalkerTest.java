@@ -0,0 +1,116 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Tests walking a directory tree.
+ */
+public class DirectoryWalkerTest {
+
+    private File baseDir;
+
+    /**
+     * Create an empty directory.
+     *
+     * @throws IOException
+     *             If the directory cannot be created.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        baseDir = Files.createTempDirectory("directory-walker").toFile().getCanonicalFile();
+    }
+
+    /**
+     * Delete the directory, without following the links in it.
+     */
+    @AfterEach
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(baseDir);
+    }
+
+    /**
+     * Build directories are found, but not walked any further.
+     *
+     * @throws IOException
+     *             If the directories cannot be created.
+     */
+    @Test
+    public void testFindBuildDirs() throws IOException {
+        touch("a/build.gradle");
+        touch("a/sub/build.gradle");
+        touch("b/c/build.gradle");
+        mkdirs("d/e");
+
+        AtomicInteger visited = new AtomicInteger();
+        DirectoryWalker walker = new DirectoryWalker(2, dir -> visited.incrementAndGet());
+        assertEquals(Arrays.asList(new File(baseDir, "a"), new File(baseDir, "b/c")), walker.findBuildDirs(baseDir));
+        // base, a, b, b/c, d, d/e
+        assertEquals(6, visited.get());
+    }
+
+    /**
+     * A symbolic link back to one of its parent directories is pruned instead
+     * of being walked forever, while other links are followed.
+     *
+     * @throws IOException
+     *             If the directories or links cannot be created.
+     */
+    @Test
+    public void testSymlinkCycle() throws IOException {
+        touch("projects/p1/build.gradle");
+        Path projects = mkdirs("projects");
+        Files.createSymbolicLink(projects.resolve("loop"), baseDir.toPath());
+        Files.createSymbolicLink(mkdirs("links").resolve("p1"), projects.resolve("p1"));
+
+        DirectoryWalker walker = new DirectoryWalker(2, PruneRules.NONE, dir -> {
+            // Not interested
+        });
+        assertEquals(Arrays.asList(new File(baseDir, "links/p1"), new File(baseDir, "projects/p1")),
+            walker.findBuildDirs(baseDir));
+        assertEquals(Collections.singletonMap(PruneRules.Reason.CYCLE, 1L), walker.getPrunedCounts());
+    }
+
+    /**
+     * Subtrees are pruned by the rules, and counted per reason.
+     *
+     * @throws IOException
+     *             If the directories cannot be created.
+     */
+    @Test
+    public void testPruned() throws IOException {
+        touch("node_modules/lib/build.gradle");
+        touch("generated/build.gradle");
+        touch("app/build.gradle");
+
+        DirectoryWalker walker = new DirectoryWalker(2,
+            new PruneRules(true, Collections.singletonList("generated"), -1, false), dir -> {
+                // Not interested
+            });
+        assertEquals(Collections.singletonList(new File(baseDir, "app")), walker.findBuildDirs(baseDir));
+        assertEquals(1L, walker.getPrunedCounts().get(PruneRules.Reason.DEFAULT_EXCLUDE).longValue());
+        assertEquals(1L, walker.getPrunedCounts().get(PruneRules.Reason.EXCLUDE).longValue());
+    }
+
+    private Path mkdirs(String path) throws IOException {
+        return Files.createDirectories(baseDir.toPath().resolve(path));
+    }
+
+    private void touch(String path) throws IOException {
+        Path file = baseDir.toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[0]);
+    }
+}
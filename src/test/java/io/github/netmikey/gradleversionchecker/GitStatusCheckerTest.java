@@ -0,0 +1,130 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Tests the quick index-based check of the working tree.
+ */
+public class GitStatusCheckerTest {
+
+    private File workTree;
+
+    private Git git;
+
+    private Repository repository;
+
+    /**
+     * Commit a file that was last modified well before the index was
+     * written.
+     *
+     * @throws Exception
+     *             If the repository cannot be created.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        workTree = Files.createTempDirectory("git-status").toFile().getCanonicalFile();
+        git = Git.init().setDirectory(workTree).call();
+        repository = git.getRepository();
+        write("build.gradle", "apply plugin: 'java'\n");
+        new File(workTree, "build.gradle").setLastModified(System.currentTimeMillis() - 60_000);
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("init").setAuthor("a", "a@b").setCommitter("a", "a@b").call();
+    }
+
+    /**
+     * Delete the repository.
+     */
+    @AfterEach
+    public void tearDown() {
+        git.close();
+        FileSystemUtils.deleteRecursively(workTree);
+    }
+
+    /**
+     * An unchanged working tree is clean without reading any file.
+     *
+     * @throws IOException
+     *             If the repository cannot be read.
+     */
+    @Test
+    public void testClean() throws IOException {
+        assertTrue(GitStatusChecker.indexStat(repository));
+        assertTrue(checker(GitStatusChecker.Strategy.INDEX_STAT).isClean(repository, workTree));
+    }
+
+    /**
+     * A file modified as recently as the index was written might have changed
+     * unnoticed ("racy git"): the full status decides.
+     *
+     * @throws IOException
+     *             If the repository cannot be read.
+     */
+    @Test
+    public void testRacyGit() throws IOException {
+        File buildFile = new File(workTree, "build.gradle");
+        repository.getIndexFile().setLastModified(buildFile.lastModified());
+
+        assertFalse(GitStatusChecker.indexStat(repository));
+        assertTrue(checker(GitStatusChecker.Strategy.INDEX_STAT).isClean(repository, workTree));
+
+        // Same size, same modification time, different contents
+        long lastModified = buildFile.lastModified();
+        write("build.gradle", "apply plugin: 'base'\n");
+        buildFile.setLastModified(lastModified);
+        assertFalse(checker(GitStatusChecker.Strategy.INDEX_STAT).isClean(repository, workTree));
+    }
+
+    /**
+     * Modified files fail the quick check, and are confirmed by the full
+     * status.
+     *
+     * @throws IOException
+     *             If the repository cannot be read.
+     */
+    @Test
+    public void testModified() throws IOException {
+        write("build.gradle", "apply plugin: 'java-library'\n");
+
+        assertFalse(GitStatusChecker.indexStat(repository));
+        assertFalse(checker(GitStatusChecker.Strategy.INDEX_STAT).isClean(repository, workTree));
+    }
+
+    /**
+     * Untracked files are only detected by the full status, which can be
+     * asked for whatever the strategy.
+     *
+     * @throws IOException
+     *             If the repository cannot be read.
+     */
+    @Test
+    public void testUntracked() throws IOException {
+        write("src/main/java/Main.java", "class Main {}\n");
+
+        assertTrue(checker(GitStatusChecker.Strategy.INDEX_STAT).isClean(repository, workTree));
+        assertTrue(checker(GitStatusChecker.Strategy.WRAPPER_ONLY).isClean(repository, workTree));
+        assertFalse(checker(GitStatusChecker.Strategy.FULL).isClean(repository, workTree));
+        assertFalse(checker(GitStatusChecker.Strategy.INDEX_STAT).isFullyClean(repository, workTree));
+    }
+
+    private GitStatusChecker checker(GitStatusChecker.Strategy strategy) {
+        return TestBeans.set(new GitStatusChecker(), "strategy", strategy);
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(workTree, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests parsing and ordering of {@link GradleVersion}s.
+ */
+public class GradleVersionTest {
+
+    /**
+     * Versions must be ordered numerically, pre-releases before their final
+     * release.
+     */
+    @Test
+    public void testOrdering() {
+        List<String> expected = Arrays.asList("4.9", "4.10-milestone-1", "4.10-rc-1", "4.10-rc-2", "4.10",
+            "4.10.1", "4.10.2", "5.0-milestone-1", "5.0-rc-1", "5.0", "5.0.1", "5.4");
+        List<String> shuffled = Arrays.asList("5.0", "4.10.2", "5.4", "4.10-rc-2", "4.9", "5.0-rc-1", "4.10",
+            "5.0-milestone-1", "4.10.1", "4.10-milestone-1", "5.0.1", "4.10-rc-1");
+
+        assertEquals(expected, shuffled.stream().map(GradleVersion::of).sorted().map(GradleVersion::toString)
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * Missing trailing parts count as zero.
+     */
+    @Test
+    public void testUnequalLength() {
+        assertEquals(0, GradleVersion.of("5.0").compareTo(GradleVersion.of("5.0.0")));
+        assertEquals(GradleVersion.of("5.0"), GradleVersion.of("5.0.0"));
+        assertEquals(GradleVersion.of("5.0").hashCode(), GradleVersion.of("5.0.0").hashCode());
+        assertTrue(GradleVersion.of("5.0").compareTo(GradleVersion.of("5.0.1")) < 0);
+        assertTrue(GradleVersion.of("10.0").compareTo(GradleVersion.of("9.9.9")) > 0);
+    }
+
+    /**
+     * Parsing the same string twice yields the same instance.
+     */
+    @Test
+    public void testInterning() {
+        assertSame(GradleVersion.of("5.4.1"), GradleVersion.of("5.4.1"));
+        assertEquals("5.4.1", GradleVersion.of("5.4.1").toString());
+    }
+
+    /**
+     * Major version detection.
+     */
+    @Test
+    public void testMajor() {
+        assertEquals(5, GradleVersion.of("5.0-rc-1").getMajor());
+        assertTrue(GradleVersion.of("5.0-rc-1").isSameMajor(GradleVersion.of("5.4")));
+        assertFalse(GradleVersion.of("4.10.2").isSameMajor(GradleVersion.of("5.4")));
+        assertFalse(GradleVersion.of("5.0-rc-1").isFinal());
+        assertTrue(GradleVersion.of("5.0").isFinal());
+    }
+
+    /**
+     * Garbage is rejected.
+     */
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> GradleVersion.of("five"));
+        assertThrows(IllegalArgumentException.class, () -> GradleVersion.of(""));
+        assertThrows(IllegalArgumentException.class, () -> GradleVersion.of("5..0"));
+    }
+}
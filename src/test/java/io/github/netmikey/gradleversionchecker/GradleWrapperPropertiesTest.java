@@ -0,0 +1,57 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests reading the Gradle version from the wrapper properties.
+ */
+public class GradleWrapperPropertiesTest {
+
+    /**
+     * Both distribution types are recognized, with escaped or unescaped
+     * colons.
+     *
+     * @throws IOException
+     *             If the properties cannot be read.
+     */
+    @Test
+    public void testGradleVersion() throws IOException {
+        assertEquals(Optional.of("5.4.1"),
+            version("distributionUrl=https\\://services.gradle.org/distributions/gradle-5.4.1-bin.zip"));
+        assertEquals(Optional.of("4.10-rc-2"),
+            version("distributionUrl=https://services.gradle.org/distributions/gradle-4.10-rc-2-all.zip"));
+        assertEquals(Optional.of("5.0"),
+            version("distributionUrl = https\\://repo.example.com/gradle/gradle-5.0-bin.zip  "));
+    }
+
+    /**
+     * URLs that don't follow Gradle's naming scheme yield no version,
+     * whatever the version would look like.
+     *
+     * @throws IOException
+     *             If the properties cannot be read.
+     */
+    @Test
+    public void testUnrecognizedDistributionUrl() throws IOException {
+        assertEquals(Optional.empty(), version("distributionBase=GRADLE_USER_HOME"));
+        assertEquals(Optional.empty(),
+            version("distributionUrl=https\\://services.gradle.org/distributions/gradle-5.4-src.zip"));
+        assertEquals(Optional.empty(), version("distributionUrl=https\\://repo.example.com/custom-gradle.zip"));
+        // Recognized as a name, even though it's no version: the analysis asks Gradle then
+        assertEquals(Optional.of("acme-5.4"),
+            version("distributionUrl=https\\://repo.example.com/gradle/gradle-acme-5.4-bin.zip"));
+        assertThrows(IllegalArgumentException.class, () -> GradleVersion.of("acme-5.4"));
+    }
+
+    private Optional<String> version(String properties) throws IOException {
+        return GradleWrapperProperties.read(new ByteArrayInputStream(properties.getBytes(StandardCharsets.ISO_8859_1)))
+            .getGradleVersion();
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.github.netmikey.gradleversionchecker.Inventory.Change;
+import io.github.netmikey.gradleversionchecker.InventoryStore.Run;
+
+/**
+ * Tests recording runs in an in-memory database and querying them.
+ */
+public class InventoryStoreTest {
+
+    private final File baseDir = new File("/work").getAbsoluteFile();
+
+    private final String database = "inventory-" + UUID.randomUUID();
+
+    private final List<InventoryStore> stores = new ArrayList<>();
+
+    /**
+     * Close the stores, which drops the database.
+     */
+    @AfterEach
+    public void tearDown() {
+        stores.forEach(InventoryStore::close);
+    }
+
+    /**
+     * The schema is created on first use, and left alone if it exists.
+     */
+    @Test
+    public void testSchema() {
+        InventoryStore store = store(50);
+        assertTrue(store.findRuns().isEmpty());
+        store.recordRun(baseDir, Main.Action.LIST, Collections.singletonList(project("a", "5.4")));
+
+        InventoryStore other = store(50);
+        assertEquals(1, other.findRuns().size());
+        assertEquals(1, other.findProjects(baseDir, null, null).size());
+    }
+
+    /**
+     * Each run is compared to the state left by the runs before it.
+     */
+    @Test
+    public void testChanges() {
+        InventoryStore store = store(50);
+        store.recordRun(baseDir, Main.Action.LIST, Arrays.asList(project("a", "5.2"), project("b", "4.10.3")));
+        store.recordRun(baseDir, Main.Action.UPGRADE, Arrays.asList(project("a", "5.4"), project("c", "5.2")));
+
+        List<Run> runs = store.findRuns();
+        assertEquals(2, runs.size());
+        assertEquals("UPGRADE", runs.get(0).getAction());
+        assertEquals(2, runs.get(0).getProjectCount());
+        assertNotNull(runs.get(0).getFinishedAt());
+
+        // The latest run by default
+        assertEquals(Arrays.asList("CHANGED a", "REMOVED b", "ADDED c"), describe(store.findChanges(baseDir, null)));
+        assertEquals(Arrays.asList("ADDED a", "ADDED b"),
+            describe(store.findChanges(baseDir, runs.get(1).getId())));
+
+        // An unchanged project is found again, without a change
+        store.recordRun(baseDir, Main.Action.LIST, Arrays.asList(project("a", "5.4"), project("c", "5.2")));
+        assertTrue(store.findChanges(baseDir, null).isEmpty());
+    }
+
+    /**
+     * Projects are found by directory, Gradle major version and Gradle
+     * version.
+     */
+    @Test
+    public void testProjects() {
+        InventoryStore store = store(50);
+        store.recordRun(baseDir, Main.Action.LIST, Arrays.asList(project("a", "5.4"), project("a_b/c", "5.2"),
+            project("axb", "4.10.3"), project("d", null)));
+
+        assertEquals(Arrays.asList("a", "a_b/c", "axb", "d"), paths(store.findProjects(baseDir, null, null)));
+        assertEquals(Arrays.asList("a", "a_b/c"), paths(store.findProjects(baseDir, 5, null)));
+        assertEquals(Arrays.asList("a_b/c"), paths(store.findProjects(baseDir, null, "5.2")));
+        assertEquals(Collections.emptyList(), paths(store.findProjects(baseDir, 4, "5.2")));
+        // Wildcards in the directory are taken literally
+        assertEquals(Arrays.asList("a_b/c"), paths(store.findProjects(new File(baseDir, "a_b"), null, null)));
+        assertEquals(Arrays.asList("a"), paths(store.findProjects(new File(baseDir, "a"), null, null)));
+    }
+
+    /**
+     * A run of a subdirectory only covers that subdirectory: it removes
+     * nothing outside of it, and is only the latest run for it.
+     */
+    @Test
+    public void testSubdirectoryRun() {
+        InventoryStore store = store(50);
+        store.recordRun(baseDir, Main.Action.LIST, Arrays.asList(project("a", "5.2"), project("x/b", "5.2")));
+        store.recordRun(new File(baseDir, "x"), Main.Action.LIST, Collections.singletonList(project("x/b", "5.4")));
+
+        assertEquals(Arrays.asList("a", "x/b"), paths(store.findProjects(baseDir, null, null)));
+        assertEquals(Arrays.asList("CHANGED x/b"), describe(store.findChanges(new File(baseDir, "x"), null)));
+        assertEquals(Arrays.asList("ADDED a", "ADDED x/b"), describe(store.findChanges(baseDir, null)));
+    }
+
+    /**
+     * Only the configured number of runs is kept, along with their history.
+     */
+    @Test
+    public void testHistoryTrimmed() {
+        InventoryStore store = store(2);
+        for (String version : Arrays.asList("5.0", "5.2", "5.4")) {
+            store.recordRun(baseDir, Main.Action.LIST, Collections.singletonList(project("a", version)));
+        }
+
+        List<Run> runs = store.findRuns();
+        assertEquals(2, runs.size());
+        long trimmedRun = runs.get(1).getId() - 1;
+        assertTrue(store.findChanges(baseDir, trimmedRun).isEmpty());
+        assertEquals(Arrays.asList("CHANGED a"), describe(store.findChanges(baseDir, runs.get(1).getId())));
+        // The current state is kept regardless
+        assertEquals(GradleVersion.of("5.4"), store.findProjects(baseDir, null, null).get(0).getGradleVersion());
+    }
+
+    /**
+     * A run that hasn't been finished is discarded when the store is closed.
+     */
+    @Test
+    public void testUnfinishedRun() {
+        // Keeps the in-memory database open
+        InventoryStore other = store(50);
+        assertTrue(other.findRuns().isEmpty());
+
+        InventoryStore store = store(50);
+        store.startRun(baseDir, Main.Action.LIST);
+        store.record(project("a", "5.4"));
+        store.close();
+
+        assertTrue(other.findRuns().isEmpty());
+        assertTrue(other.findProjects(baseDir, null, null).isEmpty());
+    }
+
+    private InventoryStore store(int history) {
+        InventoryStore store = new InventoryStore() {
+            @Override
+            String url() {
+                return "jdbc:h2:mem:" + database;
+            }
+        };
+        TestBeans.set(store, "out", ConsoleWriter.INSTANCE);
+        TestBeans.set(store, "enabled", true);
+        TestBeans.set(store, "history", history);
+        stores.add(store);
+        return store;
+    }
+
+    private ProjectMetadata project(String path, String gradleVersion) {
+        ProjectMetadata project = new ProjectMetadata();
+        project.setProjectDir(new File(baseDir, path));
+        project.setGradleVersion(gradleVersion == null ? null : GradleVersion.of(gradleVersion));
+        project.setGradleVersionUpToDate("5.4".equals(gradleVersion));
+        return project;
+    }
+
+    private List<String> paths(List<ProjectMetadata> projects) {
+        List<String> paths = new ArrayList<>();
+        for (ProjectMetadata project : projects) {
+            paths.add(relativePath(project));
+        }
+        return paths;
+    }
+
+    private List<String> describe(List<Change> changes) {
+        List<String> descriptions = new ArrayList<>();
+        for (Change change : changes) {
+            descriptions.add(change.getType() + " " + relativePath(change.getProject()));
+        }
+        return descriptions;
+    }
+
+    private String relativePath(ProjectMetadata project) {
+        return baseDir.toPath().relativize(project.getProjectDir().toPath()).toString().replace(File.separatorChar,
+            '/');
+    }
+}
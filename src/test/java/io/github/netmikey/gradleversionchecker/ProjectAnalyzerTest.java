@@ -0,0 +1,95 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Tests resolving a project's root directory without asking Gradle.
+ */
+public class ProjectAnalyzerTest {
+
+    private File baseDir;
+
+    /**
+     * Create an empty directory.
+     *
+     * @throws IOException
+     *             If the directory cannot be created.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        baseDir = Files.createTempDirectory("project-analyzer").toFile().getCanonicalFile();
+    }
+
+    /**
+     * Delete the directory.
+     */
+    @AfterEach
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(baseDir);
+    }
+
+    /**
+     * A project with its own settings file, Groovy or Kotlin, is the root of
+     * its build, whatever is further up the tree.
+     *
+     * @throws IOException
+     *             If the files cannot be created.
+     */
+    @Test
+    public void testOwnSettingsFile() throws IOException {
+        File project = mkdirs("outer/project");
+        touch("outer/settings.gradle");
+        touch("outer/project/settings.gradle.kts");
+
+        assertEquals(Optional.of(project), ProjectAnalyzer.resolveRootDirStatically(project));
+    }
+
+    /**
+     * A settings file further up the tree might or might not include the
+     * project: only Gradle can tell.
+     *
+     * @throws IOException
+     *             If the files cannot be created.
+     */
+    @Test
+    public void testSettingsFileFurtherUp() throws IOException {
+        File project = mkdirs("outer/project");
+        touch("settings.gradle");
+
+        assertEquals(Optional.empty(), ProjectAnalyzer.resolveRootDirStatically(project));
+    }
+
+    /**
+     * Without any settings file, the project is a single-project build.
+     *
+     * @throws IOException
+     *             If the files cannot be created.
+     */
+    @Test
+    public void testNoSettingsFile() throws IOException {
+        File project = mkdirs("outer/project");
+        touch("outer/project/build.gradle");
+
+        assertEquals(Optional.of(project), ProjectAnalyzer.resolveRootDirStatically(project));
+    }
+
+    private File mkdirs(String path) {
+        File dir = new File(baseDir, path);
+        dir.mkdirs();
+        return dir;
+    }
+
+    private void touch(String path) throws IOException {
+        Files.write(new File(baseDir, path).toPath(), new byte[0]);
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Tests deciding which subtrees not to walk.
+ */
+public class PruneRulesTest {
+
+    private File baseDir;
+
+    /**
+     * Create an empty directory.
+     *
+     * @throws IOException
+     *             If the directory cannot be created.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        baseDir = Files.createTempDirectory("prune-rules").toFile().getCanonicalFile();
+    }
+
+    /**
+     * Delete the directory.
+     */
+    @AfterEach
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(baseDir);
+    }
+
+    /**
+     * Patterns without a slash match the directory name at any depth, those
+     * with a slash the whole path relative to the scanned directory.
+     *
+     * @throws IOException
+     *             If the directories cannot be created.
+     */
+    @Test
+    public void testExcludes() throws IOException {
+        PruneRules rules = new PruneRules(false, Arrays.asList("*-generated", " legacy/*/docs ", ""), -1, false);
+
+        assertEquals(PruneRules.Reason.EXCLUDE, check(rules, "src-generated"));
+        assertEquals(PruneRules.Reason.EXCLUDE, check(rules, "a/b/src-generated"));
+        assertEquals(PruneRules.Reason.EXCLUDE, check(rules, "legacy/module/docs"));
+        assertNull(check(rules, "docs"));
+        assertNull(check(rules, "current/module/docs"));
+        assertNull(check(rules, "legacy/a/b/docs"));
+        assertNull(check(rules, "legacy"));
+    }
+
+    /**
+     * A directory with a default-excluded name is still walked if it is a
+     * Gradle build itself.
+     *
+     * @throws IOException
+     *             If the directories cannot be created.
+     */
+    @Test
+    public void testDefaultExcludes() throws IOException {
+        PruneRules rules = new PruneRules(true, Collections.emptyList(), -1, false);
+
+        assertEquals(PruneRules.Reason.DEFAULT_EXCLUDE, check(rules, "node_modules"));
+        assertEquals(PruneRules.Reason.DEFAULT_EXCLUDE, check(rules, "project/build"));
+        Files.write(new File(baseDir, "project/build/build.gradle").toPath(), new byte[0]);
+        assertNull(check(rules, "project/build"));
+
+        assertNull(check(new PruneRules(false, Collections.emptyList(), -1, false), "node_modules"));
+    }
+
+    /**
+     * Directories below the maximum depth are pruned, whatever their name.
+     *
+     * @throws IOException
+     *             If the directories cannot be created.
+     */
+    @Test
+    public void testMaxDepth() throws IOException {
+        PruneRules rules = new PruneRules(true, Collections.emptyList(), 2, false);
+
+        assertNull(check(rules, "a/b"));
+        assertEquals(PruneRules.Reason.MAX_DEPTH, check(rules, "a/b/c"));
+        assertEquals(PruneRules.Reason.MAX_DEPTH, check(rules, "a/b/.git"));
+        assertNull(check(PruneRules.NONE, "a/b/c/node_modules"));
+    }
+
+    private PruneRules.Reason check(PruneRules rules, String path) throws IOException {
+        Path relativeDir = Paths.get(path);
+        Path dir = baseDir.toPath().resolve(relativeDir);
+        Files.createDirectories(dir);
+        return rules.check(dir, relativeDir, relativeDir.getNameCount());
+    }
+}
@@ -0,0 +1,188 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.EnumSet;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+import io.github.netmikey.gradleversionchecker.ProjectMetadata.Facet;
+
+/**
+ * Tests invalidating cached analysis results.
+ */
+public class ScanCacheTest {
+
+    private File baseDir;
+
+    private File projectDir;
+
+    private Git git;
+
+    private GitRepositories gitRepositories;
+
+    /**
+     * Create a project with a wrapper in a Git repository.
+     *
+     * @throws Exception
+     *             If the project cannot be created.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        baseDir = Files.createTempDirectory("scan-cache").toFile().getCanonicalFile();
+        projectDir = new File(baseDir, "project");
+        writeWrapper("5.2");
+        git = Git.init().setDirectory(projectDir).call();
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("init").setAuthor("a", "a@b").setCommitter("a", "a@b").call();
+        gitRepositories = TestBeans.set(new GitRepositories(), "cacheSize", 4);
+    }
+
+    /**
+     * Delete the project.
+     */
+    @AfterEach
+    public void tearDown() {
+        gitRepositories.closeAll();
+        git.close();
+        FileSystemUtils.deleteRecursively(baseDir);
+    }
+
+    /**
+     * The fingerprint changes with the wrapper properties, the Git HEAD and
+     * index, and the strategy the working tree's status is checked with.
+     *
+     * @throws Exception
+     *             If the project cannot be changed.
+     */
+    @Test
+    public void testFingerprint() throws Exception {
+        ScanCache cache = cache(false);
+        ScanCache.Fingerprint original = cache.fingerprint(projectDir);
+        assertEquals(original, cache.fingerprint(projectDir));
+
+        writeWrapper("5.4.1");
+        ScanCache.Fingerprint wrapperChanged = cache.fingerprint(projectDir);
+        assertNotEquals(original, wrapperChanged);
+
+        File index = new File(projectDir, ".git/index");
+        index.setLastModified(index.lastModified() - 10_000);
+        ScanCache.Fingerprint beforeAdd = cache.fingerprint(projectDir);
+        git.add().addFilepattern(".").call();
+        ScanCache.Fingerprint indexChanged = cache.fingerprint(projectDir);
+        assertNotEquals(beforeAdd, indexChanged);
+        assertEquals(beforeAdd.getGitHead(), indexChanged.getGitHead());
+
+        index.setLastModified(index.lastModified() - 10_000);
+        git.commit().setMessage("upgrade").setAuthor("a", "a@b").setCommitter("a", "a@b").call();
+        index.setLastModified(indexChanged.getGitIndexLastModified());
+        ScanCache.Fingerprint headChanged = cache.fingerprint(projectDir);
+        assertNotEquals(indexChanged.getGitHead(), headChanged.getGitHead());
+        assertNotEquals(indexChanged, headChanged);
+
+        ScanCache.Fingerprint otherStrategy = cache.fingerprint(projectDir);
+        headChanged.setGitStatus(GitStatusChecker.Strategy.FULL.name());
+        otherStrategy.setGitStatus(GitStatusChecker.Strategy.WRAPPER_ONLY.name());
+        assertNotEquals(headChanged, otherStrategy);
+    }
+
+    /**
+     * An entry is only found with the same fingerprint, and handed out as a
+     * copy that doesn't change the cached one.
+     *
+     * @throws IOException
+     *             If the fingerprint cannot be computed.
+     */
+    @Test
+    public void testLookup() throws IOException {
+        ScanCache cache = cache(false);
+        ScanCache.Fingerprint fingerprint = cache.fingerprint(projectDir);
+        cache.store(projectDir, fingerprint, project("5.2"));
+
+        ProjectMetadata found = cache.lookup(projectDir, fingerprint).get();
+        assertEquals(GradleVersion.of("5.2"), found.getGradleVersion());
+        found.setGradleVersion(GradleVersion.of("5.4"));
+        ProjectMetadata foundAgain = cache.lookup(projectDir, fingerprint).get();
+        assertNotSame(found, foundAgain);
+        assertEquals(GradleVersion.of("5.2"), foundAgain.getGradleVersion());
+
+        writeWrapper("5.4.1");
+        assertFalse(cache.lookup(projectDir, cache.fingerprint(projectDir)).isPresent());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * The working tree status and the remote tracking information aren't
+     * kept, so that they are loaded again after a lookup.
+     *
+     * @throws IOException
+     *             If the fingerprint cannot be computed.
+     */
+    @Test
+    public void testGitStatusNotCached() throws IOException {
+        ScanCache cache = cache(false);
+        ScanCache.Fingerprint fingerprint = cache.fingerprint(projectDir);
+        ProjectMetadata project = project("5.2");
+        project.setLoader((metadata, facets) -> metadata.setClean(true));
+        project.load(EnumSet.of(Facet.GRADLE, Facet.GIT, Facet.GIT_STATUS, Facet.GIT_TRACKING));
+        cache.store(projectDir, fingerprint, project);
+
+        ProjectMetadata found = cache.lookup(projectDir, fingerprint).get();
+        assertTrue(found.isLoaded(Facet.GRADLE));
+        assertTrue(found.isLoaded(Facet.GIT));
+        assertFalse(found.isLoaded(Facet.GIT_STATUS));
+        assertFalse(found.isLoaded(Facet.GIT_TRACKING));
+        // Still known to the analyzed project itself
+        assertTrue(project.isLoaded(Facet.GIT_STATUS));
+    }
+
+    /**
+     * Saved entries are read back by the next run, unless it invalidates the
+     * cache.
+     *
+     * @throws IOException
+     *             If the fingerprint cannot be computed.
+     */
+    @Test
+    public void testInvalidate() throws IOException {
+        ScanCache cache = cache(false);
+        ScanCache.Fingerprint fingerprint = cache.fingerprint(projectDir);
+        cache.store(projectDir, fingerprint, project("5.2"));
+        cache.save();
+
+        assertTrue(cache(false).lookup(projectDir, fingerprint).isPresent());
+        assertFalse(cache(true).lookup(projectDir, fingerprint).isPresent());
+    }
+
+    private ScanCache cache(boolean invalidate) {
+        ScanCache cache = new ScanCache();
+        TestBeans.set(cache, "gitRepositories", gitRepositories);
+        TestBeans.set(cache, "enabled", true);
+        TestBeans.set(cache, "invalidate", invalidate);
+        TestBeans.set(cache, "cacheDir", new File(baseDir, "cache"));
+        return cache;
+    }
+
+    private ProjectMetadata project(String gradleVersion) {
+        ProjectMetadata project = new ProjectMetadata();
+        project.setProjectDir(projectDir);
+        project.setGradleVersion(GradleVersion.of(gradleVersion));
+        return project;
+    }
+
+    private void writeWrapper(String gradleVersion) throws IOException {
+        File file = new File(projectDir, GradleWrapperProperties.PATH);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), ("distributionUrl=https\\://services.gradle.org/distributions/gradle-"
+            + gradleVersion + "-bin.zip\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.netmikey.gradleversionchecker;
+
+import java.lang.reflect.Field;
+
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Sets up components outside of a Spring context, the way Spring would
+ * inject their dependencies and options.
+ */
+final class TestBeans {
+
+    private TestBeans() {
+        // Utility class
+    }
+
+    /**
+     * Set a field of the specified bean.
+     *
+     * @param bean
+     *            The bean.
+     * @param name
+     *            The field's name.
+     * @param value
+     *            The value to set.
+     * @return The bean, for chaining.
+     */
+    static <T> T set(T bean, String name, Object value) {
+        Field field = ReflectionUtils.findField(bean.getClass(), name);
+        if (field == null) {
+            throw new IllegalArgumentException(bean.getClass().getSimpleName() + " has no field " + name);
+        }
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, bean, value);
+        return bean;
+    }
+}
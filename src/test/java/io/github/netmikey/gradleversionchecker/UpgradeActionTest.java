@@ -0,0 +1,105 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Tests committing an upgraded wrapper.
+ */
+public class UpgradeActionTest {
+
+    private File workTree;
+
+    private Git git;
+
+    private Repository repository;
+
+    /**
+     * Commit a build with a project in a subdirectory.
+     *
+     * @throws Exception
+     *             If the repository cannot be created.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        workTree = Files.createTempDirectory("upgrade-action").toFile().getCanonicalFile();
+        git = Git.init().setDirectory(workTree).call();
+        repository = git.getRepository();
+        write("build.gradle", "apply plugin: 'base'\n");
+        write("app/gradlew", "old gradlew\n");
+        write("app/gradlew.bat", "old gradlew.bat\n");
+        write("app/" + GradleWrapperProperties.PATH, "gradle-5.2\n");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("init").setAuthor("a", "a@b").setCommitter("a", "a@b").call();
+    }
+
+    /**
+     * Delete the repository.
+     */
+    @AfterEach
+    public void tearDown() {
+        git.close();
+        FileSystemUtils.deleteRecursively(workTree);
+    }
+
+    /**
+     * Only the wrapper files are committed: changes staged elsewhere, which
+     * the faster status strategies don't look at, stay staged.
+     *
+     * @throws Exception
+     *             If the upgrade cannot be committed.
+     */
+    @Test
+    public void testCommitWrapperOnly() throws Exception {
+        write("app/gradlew", "new gradlew\n");
+        write("app/" + GradleWrapperProperties.PATH, "gradle-5.4\n");
+        write("app/gradle/wrapper/gradle-wrapper.jar", "new jar\n");
+        write("build.gradle", "apply plugin: 'java'\n");
+        write("src/main/java/Main.java", "class Main {}\n");
+        git.add().addFilepattern("build.gradle").addFilepattern("src").call();
+
+        RevCommit upgrade = UpgradeAction.commitWrapper(repository, "app/", "build: upgrade Gradle");
+
+        assertEquals("new gradlew\n", read(upgrade, "app/gradlew"));
+        assertEquals("gradle-5.4\n", read(upgrade, "app/" + GradleWrapperProperties.PATH));
+        assertEquals("new jar\n", read(upgrade, "app/gradle/wrapper/gradle-wrapper.jar"));
+        assertEquals("apply plugin: 'base'\n", read(upgrade, "build.gradle"));
+        assertNull(TreeWalk.forPath(repository, "src/main/java/Main.java", upgrade.getTree()));
+
+        Status status = git.status().call();
+        assertEquals(Collections.singleton("build.gradle"), status.getChanged());
+        assertEquals(Collections.singleton("src/main/java/Main.java"), status.getAdded());
+        assertEquals(new HashSet<>(Arrays.asList("build.gradle", "src/main/java/Main.java")),
+            status.getUncommittedChanges());
+    }
+
+    private String read(RevCommit commit, String path) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree())) {
+            assertNotNull(treeWalk, path);
+            return new String(repository.open(treeWalk.getObjectId(0)).getBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(workTree, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
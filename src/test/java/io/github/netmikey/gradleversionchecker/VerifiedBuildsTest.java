@@ -0,0 +1,156 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Optional;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Tests remembering successful builds.
+ */
+public class VerifiedBuildsTest {
+
+    private static final ObjectId COMMIT = ObjectId.fromString("0123456789abcdef0123456789abcdef01234567");
+
+    private static final ObjectId OTHER_COMMIT = ObjectId.fromString("89abcdef0123456789abcdef0123456789abcdef");
+
+    private static final GradleVersion GRADLE = GradleVersion.of("5.2");
+
+    private static final String[] TASKS = { "clean", "build" };
+
+    private File baseDir;
+
+    private File storeFile;
+
+    /**
+     * Create a directory for the store.
+     *
+     * @throws IOException
+     *             If the directory cannot be created.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        baseDir = Files.createTempDirectory("verified-builds").toFile().getCanonicalFile();
+        storeFile = new File(baseDir, "not/created/yet/verified-builds.json");
+    }
+
+    /**
+     * Delete the store.
+     */
+    @AfterEach
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(baseDir);
+    }
+
+    /**
+     * A build is only found for the same commit, path, Gradle version and
+     * tasks, also by a later run.
+     */
+    @Test
+    public void testLookup() {
+        VerifiedBuilds builds = builds();
+        assertFalse(builds.lookup("app", COMMIT, GRADLE, TASKS).isPresent());
+        builds.record("app", COMMIT, GRADLE, TASKS);
+
+        assertTrue(builds.lookup("app", COMMIT, GRADLE, TASKS).isPresent());
+        assertFalse(builds.lookup("app", OTHER_COMMIT, GRADLE, TASKS).isPresent());
+        assertFalse(builds.lookup(".", COMMIT, GRADLE, TASKS).isPresent());
+        assertFalse(builds.lookup("app", COMMIT, GradleVersion.of("5.4"), TASKS).isPresent());
+        assertFalse(builds.lookup("app", COMMIT, GRADLE, new String[] { "build" }).isPresent());
+
+        // Several builds of a project are kept
+        builds.record("app", OTHER_COMMIT, GRADLE, TASKS);
+        VerifiedBuilds nextRun = builds();
+        assertTrue(nextRun.lookup("app", COMMIT, GRADLE, TASKS).isPresent());
+        assertTrue(nextRun.lookup("app", OTHER_COMMIT, GRADLE, TASKS).isPresent());
+    }
+
+    /**
+     * The path doesn't depend on where the repository is checked out, so
+     * that builds recorded elsewhere, e.g. by CI, are found.
+     *
+     * @throws Exception
+     *             If the repositories cannot be created.
+     */
+    @Test
+    public void testCheckoutIndependent() throws Exception {
+        File local = new File(baseDir, "home/me/projects/foo");
+        File ci = new File(baseDir, "ci/workspace/build-42");
+        for (File workTree : new File[] { local, ci }) {
+            new File(workTree, "app").mkdirs();
+            try (Git git = Git.init().setDirectory(workTree).call()) {
+                assertEquals("app", VerifiedBuilds.path(git.getRepository(), new File(workTree, "app")));
+                assertEquals(".", VerifiedBuilds.path(git.getRepository(), workTree));
+            }
+        }
+
+        Files.createDirectories(storeFile.getParentFile().toPath());
+        Files.write(storeFile.toPath(), ("[{\"commit\":\"" + COMMIT.getName() + "\",\"path\":\"app\","
+            + "\"gradleVersion\":\"5.2\",\"tasks\":\"clean,build\",\"verifiedAt\":\"2019-04-26T10:15:30Z\","
+            + "\"runner\":\"ci\"}]").getBytes(StandardCharsets.UTF_8));
+        assertEquals(Optional.of(Instant.parse("2019-04-26T10:15:30Z")),
+            builds().lookup("app", COMMIT, GRADLE, TASKS));
+    }
+
+    /**
+     * A corrupt store is ignored, and replaced by the next build.
+     *
+     * @throws IOException
+     *             If the store cannot be written.
+     */
+    @Test
+    public void testCorruptFile() throws IOException {
+        Files.createDirectories(storeFile.getParentFile().toPath());
+        Files.write(storeFile.toPath(), "{\"not\":".getBytes(StandardCharsets.UTF_8));
+
+        VerifiedBuilds builds = builds();
+        assertFalse(builds.lookup("app", COMMIT, GRADLE, TASKS).isPresent());
+        builds.record("app", COMMIT, GRADLE, TASKS);
+        assertTrue(builds().lookup("app", COMMIT, GRADLE, TASKS).isPresent());
+    }
+
+    /**
+     * A store that cannot be written doesn't fail the build that is being
+     * recorded.
+     */
+    @Test
+    public void testUnwritableFile() {
+        storeFile.mkdirs();
+
+        VerifiedBuilds builds = builds();
+        builds.record("app", COMMIT, GRADLE, TASKS);
+        assertTrue(builds.lookup("app", COMMIT, GRADLE, TASKS).isPresent());
+        assertFalse(builds().lookup("app", COMMIT, GRADLE, TASKS).isPresent());
+    }
+
+    /**
+     * Nothing is recorded or found when disabled.
+     */
+    @Test
+    public void testDisabled() {
+        VerifiedBuilds builds = TestBeans.set(builds(), "enabled", false);
+        builds.record("app", COMMIT, GRADLE, TASKS);
+        assertFalse(builds.lookup("app", COMMIT, GRADLE, TASKS).isPresent());
+        assertFalse(storeFile.exists());
+    }
+
+    private VerifiedBuilds builds() {
+        VerifiedBuilds builds = new VerifiedBuilds();
+        TestBeans.set(builds, "out", ConsoleWriter.INSTANCE);
+        TestBeans.set(builds, "enabled", true);
+        TestBeans.set(builds, "storeFile", storeFile.getPath());
+        TestBeans.set(builds, "cacheDir", baseDir);
+        return builds;
+    }
+}
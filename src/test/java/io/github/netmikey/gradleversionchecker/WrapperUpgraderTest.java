@@ -0,0 +1,202 @@
+package io.github.netmikey.gradleversionchecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Tests rewriting the wrapper properties natively.
+ */
+public class WrapperUpgraderTest {
+
+    private static final String SHA256 = "a1b2c3d4e5f60718293a4b5c6d7e8f90a1b2c3d4e5f60718293a4b5c6d7e8f90";
+
+    private final List<String> fetched = new ArrayList<>();
+
+    private final List<GradleVersion> generated = new ArrayList<>();
+
+    private final WrapperUpgrader upgrader = new WrapperUpgrader() {
+        @Override
+        String fetchSha256(String distributionUrl) {
+            fetched.add(distributionUrl);
+            return SHA256;
+        }
+
+        @Override
+        void generateWrapper(Path workDir, GradleVersion gradleVersion) throws IOException {
+            generated.add(gradleVersion);
+            for (String templateFile : TEMPLATE_FILES) {
+                Path file = workDir.resolve(templateFile);
+                Files.createDirectories(file.getParent());
+                Files.write(file, (templateFile + " " + gradleVersion).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    };
+
+    private File baseDir;
+
+    /**
+     * Create a directory for the caches.
+     *
+     * @throws IOException
+     *             If the directory cannot be created.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        baseDir = Files.createTempDirectory("wrapper-upgrader").toFile().getCanonicalFile();
+    }
+
+    /**
+     * Delete the caches.
+     */
+    @AfterEach
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(baseDir);
+    }
+
+    /**
+     * Only the version in the distributionUrl changes, with its escaping and
+     * distribution type, all other lines are left untouched.
+     *
+     * @throws IOException
+     *             If the checksum cannot be fetched.
+     */
+    @Test
+    public void testRewriteDistributionUrl() throws IOException {
+        assertEquals("#Mon Apr 01 12:00:00 CEST 2019\n"
+            + "distributionBase=GRADLE_USER_HOME\n"
+            + "distributionUrl=https\\://services.gradle.org/distributions/gradle-5.4.1-all.zip\n"
+            + "zipStorePath=wrapper/dists\n",
+            upgrader.rewriteProperties("#Mon Apr 01 12:00:00 CEST 2019\n"
+                + "distributionBase=GRADLE_USER_HOME\n"
+                + "distributionUrl=https\\://services.gradle.org/distributions/gradle-4.10.2-all.zip\n"
+                + "zipStorePath=wrapper/dists\n", GradleVersion.of("5.4.1")));
+        assertEquals("distributionUrl = https://repo.example.com/gradle/gradle-5.4.1-bin.zip",
+            upgrader.rewriteProperties("distributionUrl = https://repo.example.com/gradle/gradle-5.2-bin.zip",
+                GradleVersion.of("5.4.1")));
+        assertTrue(fetched.isEmpty());
+    }
+
+    /**
+     * Windows line endings are preserved.
+     *
+     * @throws IOException
+     *             If the checksum cannot be fetched.
+     */
+    @Test
+    public void testCrLf() throws IOException {
+        assertEquals("distributionBase=GRADLE_USER_HOME\r\n"
+            + "distributionUrl=https\\://services.gradle.org/distributions/gradle-5.4.1-bin.zip\r\n",
+            upgrader.rewriteProperties("distributionBase=GRADLE_USER_HOME\r\n"
+                + "distributionUrl=https\\://services.gradle.org/distributions/gradle-5.2-bin.zip\r\n",
+                GradleVersion.of("5.4.1")));
+    }
+
+    /**
+     * A project verifying its distribution keeps doing so, with the checksum
+     * of the new distribution.
+     *
+     * @throws IOException
+     *             If the checksum cannot be fetched.
+     */
+    @Test
+    public void testReplaceSha256() throws IOException {
+        assertEquals("distributionSha256Sum=" + SHA256 + "\n"
+            + "distributionUrl=https\\://services.gradle.org/distributions/gradle-5.4.1-bin.zip\n",
+            upgrader.rewriteProperties("distributionSha256Sum=0000\n"
+                + "distributionUrl=https\\://services.gradle.org/distributions/gradle-5.2-bin.zip\n",
+                GradleVersion.of("5.4.1")));
+        // Fetched from the unescaped URL
+        assertEquals(1, fetched.size());
+        assertEquals("https://services.gradle.org/distributions/gradle-5.4.1-bin.zip", fetched.get(0));
+    }
+
+    /**
+     * Without a recognizable distributionUrl, there is nothing to rewrite.
+     */
+    @Test
+    public void testMissingDistributionUrl() {
+        assertThrows(UpgradeException.class,
+            () -> upgrader.rewriteProperties("distributionBase=GRADLE_USER_HOME\n", GradleVersion.of("5.4.1")));
+        assertThrows(UpgradeException.class, () -> upgrader.rewriteProperties(
+            "distributionUrl=https\\://repo.example.com/custom-gradle.zip\n", GradleVersion.of("5.4.1")));
+    }
+
+    /**
+     * The template is generated once per Gradle version, even into a cache
+     * directory that doesn't exist yet, and without leaving anything staged.
+     *
+     * @throws IOException
+     *             If the template cannot be generated.
+     */
+    @Test
+    public void testTemplate() throws IOException {
+        File cacheDir = new File(baseDir, "not/created/yet");
+        TestBeans.set(upgrader, "cacheDir", cacheDir);
+
+        File templateDir = upgrader.template(GradleVersion.of("5.4.1"));
+        assertEquals(new File(cacheDir, "wrapper-templates/5.4.1"), templateDir);
+        for (String templateFile : WrapperUpgrader.TEMPLATE_FILES) {
+            assertEquals(templateFile + " 5.4.1",
+                new String(Files.readAllBytes(new File(templateDir, templateFile).toPath()), StandardCharsets.UTF_8));
+        }
+        assertEquals(templateDir, upgrader.template(GradleVersion.of("5.4.1")));
+        assertEquals(1, generated.size());
+        assertArrayEquals(new String[] { "5.4.1" }, templateDir.getParentFile().list());
+    }
+
+    /**
+     * Restoring a backup brings back the original wrapper files with their
+     * executable bit, and deletes the ones the upgrade added.
+     *
+     * @throws IOException
+     *             If the wrapper cannot be written.
+     */
+    @Test
+    public void testRestoreBackup() throws IOException {
+        File projectDir = new File(baseDir, "project");
+        write(projectDir, "gradlew", "#!/bin/sh\nold gradlew\n");
+        new File(projectDir, "gradlew").setExecutable(true);
+        write(projectDir, "gradlew.bat", "@rem old gradlew.bat\r\n");
+        write(projectDir, GradleWrapperProperties.PATH,
+            "distributionUrl=https\\://services.gradle.org/distributions/gradle-5.2-bin.zip\n");
+        TestBeans.set(upgrader, "cacheDir", new File(baseDir, "cache"));
+
+        try (WrapperUpgrader.Backup backup = upgrader.backup(projectDir)) {
+            upgrader.upgrade(projectDir, GradleVersion.of("5.4.1"));
+            assertEquals("gradlew 5.4.1", read(projectDir, "gradlew"));
+            assertTrue(new File(projectDir, "gradle/wrapper/gradle-wrapper.jar").isFile());
+            new File(projectDir, "gradlew").setExecutable(false);
+
+            backup.restore();
+        }
+
+        assertEquals("#!/bin/sh\nold gradlew\n", read(projectDir, "gradlew"));
+        assertTrue(new File(projectDir, "gradlew").canExecute());
+        assertEquals("@rem old gradlew.bat\r\n", read(projectDir, "gradlew.bat"));
+        assertEquals("distributionUrl=https\\://services.gradle.org/distributions/gradle-5.2-bin.zip\n",
+            read(projectDir, GradleWrapperProperties.PATH));
+        assertFalse(new File(projectDir, "gradle/wrapper/gradle-wrapper.jar").exists());
+    }
+
+    private static String read(File dir, String path) throws IOException {
+        return new String(Files.readAllBytes(new File(dir, path).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File dir, String path, String content) throws IOException {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}